@@ -667,14 +667,37 @@ package com.qualifiedcactus.sqlObjectMapper
 
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.BaseClassInfo
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsLocalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RowPlan
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedParamBinder
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedRowMapper
 import com.qualifiedcactus.sqlObjectMapper.toParam.DefaultParamClassMapping
 import com.qualifiedcactus.sqlObjectMapper.toParam.ParamClassMapping
+import java.sql.ResultSetMetaData
+import java.util.ServiceLoader
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.reflect.KClass
 
 internal object MappingProvider {
 
+    private val generatedRowMappers: Map<Class<*>, GeneratedRowMapper<*>> by lazy {
+        ServiceLoader.load(GeneratedRowMapper::class.java).associateBy { it.dtoClass }
+    }
+
+    private val generatedParamBinders: Map<Class<*>, GeneratedParamBinder<*>> by lazy {
+        ServiceLoader.load(GeneratedParamBinder::class.java).associateBy { it.dtoClass }
+    }
+
+    /**
+     * Find the row mapper generated at build time for [clazz], if any
+     */
+    fun findGeneratedRowMapper(clazz: Class<*>): GeneratedRowMapper<*>? = generatedRowMappers[clazz]
+
+    /**
+     * Find the parameter binder generated at build time for [clazz], if any
+     */
+    fun findGeneratedParamBinder(clazz: Class<*>): GeneratedParamBinder<*>? = generatedParamBinders[clazz]
+
     private val rsMappingCache = ConcurrentHashMap<KClass<*>, RsTotalClassMapping>()
 
 
@@ -710,4 +733,48 @@ internal object MappingProvider {
             }
         }
     }
+
+    private const val ROW_PLAN_CACHE_SIZE = 1024
+
+    /**
+     * Looked up on every execution, so reads don't take a lock.
+     * Bounded by clearing it once it is full rather than by evicting the least recently used plan.
+     */
+    private val rowPlanCache = ConcurrentHashMap<RowPlanKey, RowPlan>()
+
+    /**
+     * Get the [RowPlan] of a ResultSet, reusing the plan of a previous execution
+     * of the same [sql] with the same [mapping] and the same column labels.
+     * @param sql the query that produced the ResultSet, null if unknown
+     */
+    fun planRsRow(sql: String?, mapping: RsTotalClassMapping, rsMetaData: ResultSetMetaData): RowPlan {
+        val columnLabels = RowPlan.getColumnLabels(rsMetaData)
+        val key = RowPlanKey(sql, mapping, columnLabels)
+        val cachedPlan = rowPlanCache[key]
+        if (cachedPlan != null) {
+            return cachedPlan
+        }
+        val plan = RowPlan.fromColumnLabels(columnLabels, mapping)
+        if (rowPlanCache.size >= ROW_PLAN_CACHE_SIZE) {
+            rowPlanCache.clear()
+        }
+        return rowPlanCache.putIfAbsent(key, plan) ?: plan
+    }
+
+    private class RowPlanKey(
+        val sql: String?,
+        val mapping: RsTotalClassMapping,
+        val columnLabels: Array<String>,
+    ) {
+        private val hashCode = (sql.hashCode() * 31 + mapping.hashCode()) * 31 + columnLabels.contentHashCode()
+
+        override fun hashCode(): Int = hashCode
+
+        override fun equals(other: Any?): Boolean {
+            return other is RowPlanKey &&
+                other.mapping === mapping &&
+                other.sql == sql &&
+                other.columnLabels.contentEquals(columnLabels)
+        }
+    }
 }
\ No newline at end of file
@@ -666,11 +666,18 @@
 package com.qualifiedcactus.sqlObjectMapper
 
 import java.sql.Connection
-import com.qualifiedcactus.sqlObjectMapper.NpStatement.Companion.prepareStmt
+import com.qualifiedcactus.sqlObjectMapper.NpStatement.Companion.prepareNpQuery
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedParamBinder
+import com.qualifiedcactus.sqlObjectMapper.queryParsing.NpParameter
+import com.qualifiedcactus.sqlObjectMapper.queryParsing.NpQuery
 
 
 /**
- * A convenient class that helps with building dynamic raw sql query
+ * A convenient class that helps with building dynamic raw sql query.
+ *
+ * Besides the parameters of [NpStatement], the query can contain dynamic parameters (`:name[*]`),
+ * expanded parameters whose length is the size of their value rounded up to a power of two.
+ * Unused positions are set to the last value of the collection.
  */
 class NpSqlStringBuilder
 @JvmOverloads
@@ -719,7 +726,18 @@ constructor(
      * Prepare a statement with the previously added parameters
      */
     fun toNpStatement(): NpStatement<Unit> {
-        val npStatement = connection.prepareStmt(stringBuilder.toString())
+        return toNpStatement(stringBuilder.toString())
+    }
+
+    /**
+     * Prepare a statement of [sql] (usually derived from the built sql string) with the previously added parameters
+     */
+    internal fun toNpStatement(sql: String): NpStatement<Unit> {
+        var query = NpQuery.parseNpSql(sql)
+        if (query.hasDynamicParameters) {
+            query = query.withDynamicLengths(dynamicValueSizes(query))
+        }
+        val npStatement = connection.prepareNpQuery(query)
         paramList.forEach { param ->
             when (param) {
                 is ParameterWrapper.DtoWrapper -> npStatement.setParametersByDto(param.value)
@@ -730,6 +748,44 @@ constructor(
         return npStatement
     }
 
+    /**
+     * Sizes of the values of the dynamic parameters of [query], by upper-cased name
+     */
+    private fun dynamicValueSizes(query: NpQuery): Map<String, Int> {
+        val sizes = HashMap<String, Int>()
+        query.parametersMap.forEach { (name, parameter) ->
+            if (parameter !is NpParameter.DynamicParameter) {
+                return@forEach
+            }
+            // like setting the parameters, the last value added wins
+            for (param in paramList.asReversed()) {
+                val value = when (param) {
+                    is ParameterWrapper.NonDtoWrapper -> {
+                        if (param.paramName.uppercase() != name) continue
+                        param.value
+                    }
+                    is ParameterWrapper.DtoWrapper -> {
+                        @Suppress("UNCHECKED_CAST")
+                        val paramBinder = MappingProvider.findGeneratedParamBinder(param.value.javaClass)
+                            as GeneratedParamBinder<Any>?
+                        if (paramBinder != null) {
+                            val parameterIndex = paramBinder.parameterNames.indexOf(name)
+                            if (parameterIndex < 0) continue
+                            paramBinder.getValue(param.value, parameterIndex)
+                        } else {
+                            val dtoParameter = MappingProvider.mapParamClass(param.value::class)
+                                .parametersNameMap[name] ?: continue
+                            dtoParameter.getter(param.value)
+                        }
+                    }
+                }
+                sizes[name] = (value as? Collection<*> ?: throw InvalidParameterType(value, Collection::class)).size
+                break
+            }
+        }
+        return sizes
+    }
+
     private sealed interface ParameterWrapper {
         class DtoWrapper(val value:Any) : ParameterWrapper
         class NonDtoWrapper(val paramName: String, val value:Any?) : ParameterWrapper
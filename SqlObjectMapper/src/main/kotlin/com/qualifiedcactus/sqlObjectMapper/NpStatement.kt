@@ -662,17 +662,23 @@
  * <https://www.gnu.org/licenses/>.
  *
  */
-
+@file:Suppress("UNCHECKED_CAST")
 package com.qualifiedcactus.sqlObjectMapper
 
 import com.qualifiedcactus.sqlObjectMapper.fromRs.autoGenKeys.CompositeAutoGenKey
 import com.qualifiedcactus.sqlObjectMapper.fromRs.autoGenKeys.DeclaredGeneratedKeys
 import com.qualifiedcactus.sqlObjectMapper.fromRs.autoGenKeys.SingleAutoGenKey
+import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.ColumnarResult
 import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.MResultSet
 import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.ResultSetProcessor
 import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.ScalarResultSet
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.SplitQueryLoader
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedParamBinder
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedRowMapper
 import com.qualifiedcactus.sqlObjectMapper.queryParsing.NpParameter
 import com.qualifiedcactus.sqlObjectMapper.queryParsing.NpQuery
+import com.qualifiedcactus.sqlObjectMapper.toParam.JdbcObjectCreator
 import com.qualifiedcactus.sqlObjectMapper.toParam.ParamValueSetter
 import java.sql.Connection
 import java.sql.PreparedStatement
@@ -700,7 +706,7 @@ private constructor(
          */
         @JvmStatic
         fun Connection.prepareStmt(npSql: String): NpStatement<Unit> {
-            return NpQuery.parseNpSql(npSql).let { query ->
+            return parseStaticNpSql(npSql).let { query ->
                 NpStatement(
                     query,
                     this.prepareStatement(query.translatedQuery),
@@ -718,7 +724,7 @@ private constructor(
             npSql: String,
             rsSettings: ResultSetSettings
         ): NpStatement<Unit> {
-            return NpQuery.parseNpSql(npSql).let { query ->
+            return parseStaticNpSql(npSql).let { query ->
                 NpStatement(
                     query,
                     this.prepareStatement(
@@ -740,7 +746,7 @@ private constructor(
             npSql: String,
             generatedKeys: DeclaredGeneratedKeys<T>
         ): NpStatement<T> {
-            return NpQuery.parseNpSql(npSql).let { query ->
+            return parseStaticNpSql(npSql).let { query ->
                 NpStatement(
                     query,
                     this.prepareStatement(query.translatedQuery, generatedKeys.columnNames),
@@ -748,17 +754,51 @@ private constructor(
                 )
             }
         }
+
+        /**
+         * Counters of the cache of parsed named-parameter sql strings,
+         * used by every method preparing a [NpStatement]
+         */
+        @JvmStatic
+        fun queryCacheStatistics(): CacheStatistics = NpQuery.cacheStatistics()
+
+        private fun parseStaticNpSql(npSql: String): NpQuery {
+            return NpQuery.parseNpSql(npSql).also { query ->
+                if (query.hasDynamicParameters) {
+                    throw SqlObjectMapperException(
+                        "Parameters of dynamic length ([*]) are only supported by ${NpSqlStringBuilder::class.simpleName}"
+                    )
+                }
+            }
+        }
+
+        /**
+         * Prepare a [NpStatement] of a query whose dynamic parameters are already expanded
+         */
+        internal fun Connection.prepareNpQuery(query: NpQuery): NpStatement<Unit> {
+            return NpStatement(query, this.prepareStatement(query.translatedQuery))
+        }
     }
 
+    /**
+     * Arrays created for array parameters, by parameter name, freed when the parameter is bound again
+     */
+    private val boundArrays = HashMap<String, java.sql.Array>()
+
+    /**
+     * Arrays still used by a batch, freed when the statement is closed
+     */
+    private val batchedArrays = ArrayList<java.sql.Array>()
+
     /**
      * Set a parameter by name
      * @param name a case-insensitive parameter name
-     * @param value must be castable to [Collection] if the parameter is an expanded parameter
+     * @param value must be castable to [Collection] if the parameter is an expanded or array parameter
      *
      * @throws CollectionTooLargeForExpandedParameterException if collection is larger than specified length
      * of the expanded parameter
      * @throws InvalidParameterType if [value] is not castable to [Collection] when the parameter
-     * is an expanded parameter
+     * is an expanded or array parameter
      */
     fun setParameter(name: String, value: Any?): NpStatement<AutoGenKey> {
         val upperCasedName = name.uppercase()
@@ -775,9 +815,20 @@ private constructor(
      * @throws CollectionTooLargeForExpandedParameterException if collection is larger than specified length
      * of the expanded parameter
      * @throws InvalidParameterType if a parameter's value is not castable to [Collection] when the parameter
-     * is an expanded parameter
+     * is an expanded or array parameter
      */
     fun setParametersByDto(dto: Any): NpStatement<AutoGenKey> {
+        val paramBinder = MappingProvider.findGeneratedParamBinder(dto.javaClass) as GeneratedParamBinder<Any>?
+        if (paramBinder != null) {
+            paramBinder.parameterNames.forEachIndexed { i, parameterName ->
+                _setParameter(
+                    parameterName, paramBinder.getValue(dto, i),
+                    ParamValueSetter.Companion::_convertValue,
+                    ParamValueSetter.Companion::_setIntoStmt
+                )
+            }
+            return this
+        }
         val paramMap = MappingProvider.mapParamClass(dto::class)
         paramMap.parametersNameMap.forEach { (parameterName, paramInfo) ->
             _setParameter(
@@ -788,6 +839,43 @@ private constructor(
         return this
     }
 
+    override fun addBatch() {
+        statement.addBatch()
+        // the batch keeps using the bound arrays even if their parameters are bound again
+        batchedArrays.addAll(boundArrays.values)
+        boundArrays.clear()
+    }
+
+    /**
+     * Free the arrays created for array parameters, then close the statement
+     */
+    override fun close() {
+        try {
+            (boundArrays.values + batchedArrays).forEach { it.free() }
+            boundArrays.clear()
+            batchedArrays.clear()
+        } finally {
+            statement.close()
+        }
+    }
+
+    /**
+     * @param name a case-insensitive parameter name
+     */
+    internal fun hasParameter(name: String): Boolean = npQuery.parametersMap.containsKey(name.uppercase())
+
+    /**
+     * @throws ParameterNotFoundException if there is no parameter named [name]
+     * @throws SqlObjectMapperException if the parameter is not an expanded parameter
+     */
+    internal fun expandedParameterLength(name: String): Int {
+        return when (val parameter = npQuery.parametersMap[name.uppercase()] ?: throw ParameterNotFoundException(name)) {
+            is NpParameter.ExpandedParameter -> parameter.length
+            is NpParameter.SimpleParameter, is NpParameter.ArrayParameter, NpParameter.DynamicParameter ->
+                throw SqlObjectMapperException("Parameter ${name} is not an expanded parameter of fixed length")
+        }
+    }
+
     private fun _setParameter(
         parameterName: String,
         value: Any?,
@@ -800,7 +888,7 @@ private constructor(
         when (parameter) {
             is NpParameter.SimpleParameter -> {
                 val convertedValue = converterFunction(value)
-                parameter.positionList.forEach { paramPosition ->
+                parameter.positions.forEach { paramPosition ->
                     setterFunction(this, paramPosition, convertedValue)
                 }
             }
@@ -811,22 +899,100 @@ private constructor(
                             parameterName, parameter.length, value.size
                         )
                     }
+                    if (parameter.tupleSize > 1) {
+                        _setTupleParameter(parameterName, parameter, value, converterFunction, setterFunction)
+                        return
+                    }
                     val convertedValues = value.map(converterFunction)
 
-                    parameter.positionRangeList.forEach { (start, end) ->
-                        val valueIterator = convertedValues.iterator()
-                        for (paramPosition in start..end) {
-                            if (valueIterator.hasNext()) {
-                                setterFunction(this, paramPosition, valueIterator.next())
-                            } else {
-                                setterFunction(this, paramPosition, null)
-                            }
+                    // repeating the last value keeps the result of IN unchanged
+                    val padding = if (parameter.padWithLastValue) convertedValues.lastOrNull() else null
+                    parameter.startPositions.forEach { start ->
+                        for (i in 0 until parameter.length) {
+                            setterFunction(this, start + i, if (i < convertedValues.size) convertedValues[i] else padding)
                         }
                     }
                 } else {
                     throw InvalidParameterType(value, Collection::class)
                 }
             }
+            is NpParameter.ArrayParameter -> {
+                if (value !is Collection<Any?>) {
+                    throw InvalidParameterType(value, Collection::class)
+                }
+                val elements = value.map(converterFunction).toTypedArray()
+                val array = JdbcObjectCreator(connection).createArrayOf(parameter.elementTypeName, elements)
+                parameter.positions.forEach { paramPosition ->
+                    setArray(paramPosition, array)
+                }
+                val previousArray = if (array != null) boundArrays.put(parameterName, array) else boundArrays.remove(parameterName)
+                previousArray?.free()
+            }
+            // rejected when preparing the statement
+            NpParameter.DynamicParameter -> throw SqlObjectMapperException("Parameter ${parameterName} is not expanded")
+        }
+    }
+
+    /**
+     * Set a tuple-expanded parameter. A tuple is a [Pair], a [Triple], an array or a [List] of its components,
+     * or a DTO whose parameters are named by [NpParameter.ExpandedParameter.componentNames].
+     */
+    private fun _setTupleParameter(
+        parameterName: String,
+        parameter: NpParameter.ExpandedParameter,
+        tuples: Collection<Any?>,
+        converterFunction: (o: Any?)->Any?,
+        setterFunction: (stmt: PreparedStatement, paramPosition: Int, paramValue: Any?)->Unit
+    ) {
+        val tupleSize = parameter.tupleSize
+        // converted components of all tuples, with the setter of each one
+        val values = arrayOfNulls<Any?>(tuples.size * tupleSize)
+        val setters = arrayOfNulls<(stmt: PreparedStatement, paramPosition: Int, paramValue: Any?)->Unit>(values.size)
+        tuples.forEachIndexed { i, tuple ->
+            val components = when (tuple) {
+                is Pair<*, *> -> tuple.toList()
+                is Triple<*, *, *> -> tuple.toList()
+                is Array<*> -> tuple.asList()
+                is List<*> -> tuple
+                else -> null
+            }
+            if (components != null) {
+                if (components.size != tupleSize) {
+                    throw SqlObjectMapperException(
+                        "A value of parameter ${parameterName} has ${components.size} components instead of ${tupleSize}"
+                    )
+                }
+                components.forEachIndexed { j, component ->
+                    values[i * tupleSize + j] = converterFunction(component)
+                    setters[i * tupleSize + j] = setterFunction
+                }
+            } else {
+                val componentNames = parameter.componentNames
+                if (tuple == null || componentNames == null) {
+                    throw InvalidParameterType(tuple, List::class)
+                }
+                val dtoParameters = MappingProvider.mapParamClass(tuple::class).parametersNameMap
+                componentNames.forEachIndexed { j, componentName ->
+                    val dtoParameter = dtoParameters[componentName] ?: throw ParameterNotFoundException(componentName)
+                    values[i * tupleSize + j] = dtoParameter.extractor.convertValue(dtoParameter.getter(tuple))
+                    setters[i * tupleSize + j] = dtoParameter.extractor::setIntoStmt
+                }
+            }
+        }
+
+        val padWithLastTuple = parameter.padWithLastValue && values.isNotEmpty()
+        parameter.startPositions.forEach { start ->
+            for (k in 0 until parameter.length * tupleSize) {
+                val index = if (k < values.size) {
+                    k
+                } else if (padWithLastTuple) {
+                    values.size - tupleSize + k % tupleSize
+                } else {
+                    setterFunction(this, start + k, null)
+                    continue
+                }
+                setters[index]!!(this, start + k, values[index])
+            }
         }
     }
 
@@ -841,7 +1007,7 @@ private constructor(
             is SingleAutoGenKey ->
                 ScalarResultSet(this.generatedKeys, declaredGeneratedKeys.keyType)
             is CompositeAutoGenKey ->
-                MResultSet(this.generatedKeys, declaredGeneratedKeys.totalClassMapping)
+                MResultSet(this.generatedKeys, { declaredGeneratedKeys.totalClassMapping }, npQuery.translatedQuery)
         }
     }
 
@@ -862,16 +1028,78 @@ private constructor(
     fun <T : Any> processScalarResult(scalarType: Class<T>): ResultSetProcessor<T> =
         processScalarResult(scalarType.kotlin)
 
+    /**
+     * Process only the first column of the [ResultSet],
+     * with terminal operations into primitive arrays, sets and streams
+     */
+    fun <T : Any> processScalarColumn(scalarType: KClass<T>): ScalarResultSet<T> {
+        return ScalarResultSet(this.resultSet, scalarType)
+    }
+    fun <T : Any> processScalarColumn(scalarType: Class<T>): ScalarResultSet<T> =
+        processScalarColumn(scalarType.kotlin)
+
+    /**
+     * Read all rows into per-column arrays then close the [ResultSet].
+     * Column types are taken from [java.sql.ResultSetMetaData].
+     */
+    fun processColumnarResult(): ColumnarResult {
+        return ColumnarResult.fromMetaData(this.resultSet)
+    }
+
+    /**
+     * Read the columns of [dtoType]'s simple properties (nested properties included)
+     * into per-column arrays then close the [ResultSet].
+     * Column types are taken from the properties' types.
+     * @throws MissingColumnException if a column of [dtoType] is missing
+     */
+    fun processColumnarResult(dtoType: KClass<*>): ColumnarResult {
+        val resultSet = this.resultSet
+        val mapping = MappingProvider.mapRsClass(dtoType)
+        return ColumnarResult.fromRowPlan(
+            resultSet,
+            MappingProvider.planRsRow(npQuery.translatedQuery, mapping, resultSet.metaData)
+        )
+    }
+    fun processColumnarResult(dtoType: Class<*>): ColumnarResult =
+        processColumnarResult(dtoType.kotlin)
+
     /**
      * Process rows data to be parsed into DTO of [dtoType]
      * @throws SqlObjectMapperException on mapping error
      */
-    fun <T : Any> processDtoResult(dtoType: KClass<T>): ResultSetProcessor<T> {
-        return MResultSet(this.resultSet, dtoType)
-    }
+    fun <T : Any> processDtoResult(dtoType: KClass<T>): ResultSetProcessor<T> = processDtoRows(dtoType)
     fun <T : Any> processDtoResult(dtoType: Class<T>): ResultSetProcessor<T> =
         processDtoResult(dtoType.kotlin)
 
+    /**
+     * Process rows data to be parsed into DTO of [dtoType],
+     * with terminal operations reusing one instance for every row ([MResultSet.forEachRow])
+     * and reading a page ([MResultSet.toPage])
+     * @throws SqlObjectMapperException on mapping error
+     */
+    fun <T : Any> processDtoRows(dtoType: KClass<T>): MResultSet<T> {
+        val rowMapper = MappingProvider.findGeneratedRowMapper(dtoType.java) as GeneratedRowMapper<T>?
+        return MResultSet(this.resultSet, { MappingProvider.mapRsClass(dtoType) }, npQuery.translatedQuery, rowMapper)
+    }
+    fun <T : Any> processDtoRows(dtoType: Class<T>): MResultSet<T> =
+        processDtoRows(dtoType.kotlin)
+
+    /**
+     * Process rows data to be parsed into DTO of [dtoType] without their to-many properties,
+     * which are loaded by separate queries.
+     * @throws SqlObjectMapperException if [dtoType] has no to-many property
+     * @see SplitQueryLoader.toMany
+     */
+    fun <T : Any> processSplitQuery(dtoType: KClass<T>): SplitQueryLoader<T> {
+        val mapping = MappingProvider.mapRsClass(dtoType)
+        if (mapping.relation != RsTotalClassMapping.Relation.ToManyRelation) {
+            throw SqlObjectMapperException("Split query requires ${dtoType} to have to-many properties")
+        }
+        return SplitQueryLoader(this.resultSet, mapping)
+    }
+    fun <T : Any> processSplitQuery(dtoType: Class<T>): SplitQueryLoader<T> =
+        processSplitQuery(dtoType.kotlin)
+
     /**
      * A data class containing [ResultSet]'s settings of a [PreparedStatement]
      */
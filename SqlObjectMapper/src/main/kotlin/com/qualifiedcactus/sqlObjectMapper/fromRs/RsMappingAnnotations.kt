@@ -677,6 +677,20 @@ Retention(AnnotationRetention.RUNTIME)
 MustBeDocumented]
 annotation class RsConstructor
 
+/**
+ * Read rows into the annotated DTO class with a mapper compiled once per column layout,
+ * which calls the typed getters of [java.sql.ResultSet] and the DTO's constructor directly.
+ * Only used for DTO classes without to-many or recursive properties.
+ *
+ * DTO classes that cannot be compiled (bean mode, nested properties with [RsNested.nullIfAllIsNull])
+ * are read the normal way.
+ * Columns are read in the order of constructor parameters rather than in the order of the columns.
+ */
+@[Target(AnnotationTarget.CLASS)
+Retention(AnnotationRetention.RUNTIME)
+MustBeDocumented]
+annotation class RsCompiled
+
 /**
  * Map a property to a column.
  *
@@ -666,6 +666,7 @@
 package com.qualifiedcactus.sqlObjectMapper.fromRs
 
 import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
+import com.qualifiedcactus.sqlObjectMapper.newInstanceOf
 import com.qualifiedcactus.sqlObjectMapper.fromRs.DefaultRsValueExtractor.Companion.checkPrimitiveNull
 import com.qualifiedcactus.sqlObjectMapper.fromRs.DefaultRsValueExtractor.Companion.toEnum
 import java.math.BigDecimal
@@ -676,7 +677,6 @@ import java.util.*
 import kotlin.reflect.KAnnotatedElement
 import kotlin.reflect.KClass
 import kotlin.reflect.KType
-import kotlin.reflect.full.isSubclassOf
 
 
 
@@ -704,11 +704,7 @@ abstract class RsValueExtractor(
             kType: KType,
             annotations: Array<out Annotation>,
         ): RsValueExtractor {
-            return kClass.constructors.find {
-                it.parameters.size == 2 &&
-                    it.parameters[0].type.classifier == KType::class &&
-                    it.parameters[1].type.classifier == Array<out Annotation>::class
-            }?.call(kType, annotations)
+            return kClass.java.newInstanceOf(kType, annotations)
                 ?: throw SqlObjectMapperException(
                     "${kClass} doesn't have constructor of type (KType, Array<out Annotation>)"
                 )
@@ -793,7 +789,7 @@ class DefaultRsValueExtractor(
                 }
 
                 else -> {
-                    if (propertyClass.isSubclassOf(Enum::class)) {
+                    if (Enum::class.java.isAssignableFrom(propertyClass.java)) {
                         { rs, columnIndex -> rs.getString(columnIndex)?.toEnum(propertyClass) }
                     } else {
                         { rs, columnIndex -> rs.getObject(columnIndex) }
@@ -831,7 +827,7 @@ class DefaultRsValueExtractor(
         }
 
         else -> {
-            if (propertyClass.isSubclassOf(Enum::class)) {
+            if (Enum::class.java.isAssignableFrom(propertyClass.java)) {
                 { rs, columnName -> rs.getString(columnName)?.toEnum(propertyClass) }
             } else {
                 { rs, columnName -> rs.getObject(columnName) }
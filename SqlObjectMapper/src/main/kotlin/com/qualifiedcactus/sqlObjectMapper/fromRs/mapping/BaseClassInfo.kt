@@ -665,11 +665,20 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.mapping
 
+import com.qualifiedcactus.sqlObjectMapper.JavaKType
 import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
 import com.qualifiedcactus.sqlObjectMapper.fromRs.*
+import com.qualifiedcactus.sqlObjectMapper.isKotlinClass
+import java.lang.invoke.MethodHandle
+import java.lang.invoke.MethodHandles
+import java.lang.invoke.MethodType
+import java.lang.reflect.Constructor
+import java.lang.reflect.Modifier
 import kotlin.reflect.*
 import kotlin.reflect.full.*
+import kotlin.reflect.jvm.javaConstructor
 import kotlin.reflect.jvm.javaField
+import kotlin.reflect.jvm.javaSetter
 
 
 internal typealias ObjectSupplier = (values: Array<Any?>) -> Any
@@ -678,10 +687,29 @@ internal class BaseClassInfo
 private constructor(
     val kClass: KClass<*>,
     val propertyInfoList: List<PropertyInfo>,
-    val objectSupplier: ObjectSupplier
+    val objectSupplier: ObjectSupplier,
+    /**
+     * Handle of the all-args constructor, taking values in the order of [propertyInfoList].
+     * Null in bean mode.
+     */
+    val constructorHandle: MethodHandle? = null,
+    /**
+     * Handle of the no-arg constructor, of type `() -> Any`. Null if not in bean mode.
+     */
+    val beanConstructorHandle: MethodHandle? = null,
+    /**
+     * Handles of the setters (or fields) of bean mode, by [PropertyInfo.index].
+     * Their types are the declared ones: `(Owner, PropertyType) -> void`.
+     */
+    val setterHandles: Array<MethodHandle>? = null,
 ) {
     companion object {
+        private val lookup = MethodHandles.lookup()
+
         fun fromKClass(kClass: KClass<*>): BaseClassInfo {
+            if (!kClass.java.isKotlinClass()) {
+                return fromJavaClass(kClass.java)
+            }
             val publicConstructors = kClass.constructors.filter { it.visibility == KVisibility.PUBLIC }
             val constructorToBeUsed = if (publicConstructors.size > 1) {
                 kClass.constructors.find { it.hasAnnotation<RsConstructor>() }
@@ -699,26 +727,36 @@ private constructor(
 
         private fun supplyForConstructor(constructor: KFunction<Any>, kClass: KClass<*>): BaseClassInfo {
             val propertiesInfo = ArrayList<PropertyInfo>()
+            val recordComponentNames by lazy { getRecordComponentNames(kClass.java) }
             constructor.parameters.forEachIndexed { i, parameter ->
 
                 propertiesInfo.add(
                     PropertyInfo(
                         i,
-                        parameter.name ?: throw SqlObjectMapperException("Parameter's name is not available for ${kClass}"),
+                        parameter.name ?: recordComponentNames?.getOrNull(i)
+                            ?: throw SqlObjectMapperException("Parameter's name is not available for ${kClass}"),
                         parameter.type,
                         parameter.annotations.toTypedArray(),
                     )
                 )
             }
 
-            val objectSupplier: ObjectSupplier = { values ->
-                constructor.call(*values)
+            val javaConstructor = constructor.javaConstructor
+            val constructorHandle = javaConstructor?.let {
+                it.isAccessible = true
+                lookup.unreflectConstructor(it)
             }
-            return BaseClassInfo(kClass, propertiesInfo, objectSupplier)
+            val objectSupplier: ObjectSupplier = if (constructorHandle != null) {
+                constructorSupplier(constructorHandle, propertiesInfo.size)
+            } else {
+                { values -> constructor.call(*values) }
+            }
+            return BaseClassInfo(kClass, propertiesInfo, objectSupplier, constructorHandle)
         }
 
         private fun supplyForBean(constructor: KFunction<Any>, kClass: KClass<*>): BaseClassInfo {
             val propertiesInfo = ArrayList<PropertyInfo>()
+            val setterHandles = ArrayList<MethodHandle>()
 
             kClass.memberProperties.forEach { property ->
                 val field = property.javaField
@@ -739,17 +777,147 @@ private constructor(
                         field.annotations
                     )
                 )
+                // a java field, a @JvmField property or a default `private set` property doesn't have a setter,
+                // and the setter or the field written instead may be private
+                val setterHandle = property.javaSetter?.let {
+                    it.isAccessible = true
+                    lookup.unreflect(it)
+                } ?: run {
+                    field.isAccessible = true
+                    lookup.unreflectSetter(field)
+                }
+                setterHandles.add(setterHandle)
+            }
+
+            val javaConstructor = constructor.javaConstructor
+                ?: throw SqlObjectMapperException("${kClass} has no JVM constructor")
+            return beanClassInfo(kClass, propertiesInfo, javaConstructor, setterHandles)
+        }
+
+        /**
+         * Same as the Kotlin path, but with java.lang.reflect only,
+         * so that mapping a Java class or record doesn't load kotlin-reflect's metadata.
+         */
+        private fun fromJavaClass(clazz: Class<*>): BaseClassInfo {
+            val publicConstructors = clazz.constructors
+            val constructorToBeUsed = if (publicConstructors.size > 1) {
+                clazz.declaredConstructors.find { it.isAnnotationPresent(RsConstructor::class.java) }
+                    ?: throw SqlObjectMapperException("${clazz.kotlin} has no constructor specified")
+            } else {
+                publicConstructors.getOrNull(0)
+                    ?: throw SqlObjectMapperException("${clazz.kotlin} has no public constructor")
+            }
+
+            return if (constructorToBeUsed.parameterCount == 0) {
+                supplyForJavaBean(constructorToBeUsed, clazz)
+            } else {
+                supplyForJavaConstructor(constructorToBeUsed, clazz)
+            }
+        }
+
+        private fun supplyForJavaConstructor(constructor: Constructor<*>, clazz: Class<*>): BaseClassInfo {
+            val recordComponentNames by lazy { getRecordComponentNames(clazz) }
+            val propertiesInfo = constructor.parameters.mapIndexed { i, parameter ->
+                PropertyInfo(
+                    i,
+                    (if (parameter.isNamePresent) parameter.name else recordComponentNames?.getOrNull(i))
+                        ?: throw SqlObjectMapperException("Parameter's name is not available for ${clazz.kotlin}"),
+                    JavaKType(parameter.parameterizedType),
+                    parameter.annotations,
+                )
+            }
+            constructor.isAccessible = true
+            val constructorHandle = lookup.unreflectConstructor(constructor)
+            return BaseClassInfo(
+                clazz.kotlin, propertiesInfo,
+                constructorSupplier(constructorHandle, propertiesInfo.size),
+                constructorHandle
+            )
+        }
+
+        private fun supplyForJavaBean(constructor: Constructor<*>, clazz: Class<*>): BaseClassInfo {
+            val propertiesInfo = ArrayList<PropertyInfo>()
+            val setterHandles = ArrayList<MethodHandle>()
+
+            clazz.fields.forEach { field ->
+                if (
+                    Modifier.isStatic(field.modifiers) ||
+                    Modifier.isFinal(field.modifiers) ||
+                    field.getAnnotation(RsIgnore::class.java) != null
+                ) {
+                    return@forEach
+                }
+                propertiesInfo.add(
+                    PropertyInfo(
+                        propertiesInfo.size,
+                        field.name,
+                        JavaKType(field.genericType),
+                        field.annotations
+                    )
+                )
+                setterHandles.add(lookup.unreflectSetter(field))
+            }
+            return beanClassInfo(clazz.kotlin, propertiesInfo, constructor, setterHandles)
+        }
+
+        /**
+         * Create an [ObjectSupplier] calling an all-args constructor
+         */
+        private fun constructorSupplier(constructorHandle: MethodHandle, parameterCount: Int): ObjectSupplier {
+            val spreadConstructorHandle = constructorHandle
+                .asSpreader(Array<Any?>::class.java, parameterCount)
+                .asType(MethodType.methodType(Any::class.java, Array<Any?>::class.java))
+            return { values ->
+                spreadConstructorHandle.invokeExact(values) as Any
+            }
+        }
+
+        /**
+         * Create a bean mode [BaseClassInfo], whose [ObjectSupplier] calls a no-arg constructor then the setters,
+         * each setter taking the value of the same index
+         */
+        private fun beanClassInfo(
+            kClass: KClass<*>,
+            propertiesInfo: List<PropertyInfo>,
+            constructor: Constructor<*>,
+            setterHandles: List<MethodHandle>,
+        ): BaseClassInfo {
+            constructor.isAccessible = true
+            val constructorHandle = lookup.unreflectConstructor(constructor)
+                .asType(MethodType.methodType(Any::class.java))
+            val setters = Array(setterHandles.size) { i ->
+                setterHandles[i].asType(MethodType.methodType(Void.TYPE, Any::class.java, Any::class.java))
             }
 
             val objectSupplier: ObjectSupplier = { values ->
-                val instance = constructor.call()
-                propertiesInfo.forEachIndexed { index, propertyInfo ->
-                    (propertyInfo.annotations as KMutableProperty1<*, *>).call(instance, values[index])
+                val instance = constructorHandle.invokeExact() as Any
+                for (i in setters.indices) {
+                    setters[i].invokeExact(instance, values[i])
                 }
                 instance
             }
+            return BaseClassInfo(
+                kClass, propertiesInfo, objectSupplier,
+                beanConstructorHandle = constructorHandle,
+                setterHandles = setterHandles.toTypedArray(),
+            )
+        }
 
-            return BaseClassInfo(kClass, propertiesInfo, objectSupplier)
+        /**
+         * Names of a record's components, which are also the parameter names of its canonical constructor.
+         * Accessed reflectively to stay compatible with JVM versions without records.
+         * @return null if [clazz] is not a record
+         */
+        private fun getRecordComponentNames(clazz: Class<*>): List<String>? {
+            val recordComponents = try {
+                Class::class.java.getMethod("getRecordComponents").invoke(clazz) as Array<*>?
+            } catch (e: NoSuchMethodException) {
+                null
+            } ?: return null
+
+            return recordComponents.map { component ->
+                component!!.javaClass.getMethod("getName").invoke(component) as String
+            }
         }
     }
 }
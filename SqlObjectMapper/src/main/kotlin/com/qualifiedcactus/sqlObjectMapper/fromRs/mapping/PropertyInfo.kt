@@ -671,7 +671,6 @@ import com.qualifiedcactus.sqlObjectMapper.fromRs.RsValueExtractor
 import kotlin.properties.Delegates
 import kotlin.reflect.KClass
 import kotlin.reflect.KType
-import kotlin.reflect.full.isSuperclassOf
 
 internal inline fun <reified T: Annotation> Array<out Annotation>.findAnnotation(): T? {
     return this.firstOrNull {it is T} as T?
@@ -714,9 +713,9 @@ internal sealed class ClassProperty(
         val collectionSupplier: () -> MutableCollection<Any?> = run {
             val kCLass = propertyInfo.type.classifier as KClass<*>
 
-            if (kCLass.isSuperclassOf(List::class)) {
+            if (kCLass.java.isAssignableFrom(List::class.java)) {
                 { ArrayList() }
-            } else if (kCLass.isSuperclassOf(Set::class)) {
+            } else if (kCLass.java.isAssignableFrom(Set::class.java)) {
                 { HashSet() }
             } else throw SqlObjectMapperException(
                 "${kCLass} is not the supported collection type " +
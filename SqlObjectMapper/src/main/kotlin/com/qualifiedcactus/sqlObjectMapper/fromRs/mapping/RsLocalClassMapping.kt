@@ -665,10 +665,10 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.mapping
 
+import com.qualifiedcactus.sqlObjectMapper.createNoArgInstance
 import com.qualifiedcactus.sqlObjectMapper.fromRs.*
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.ClassProperty.*
 import kotlin.reflect.KClass
-import kotlin.reflect.full.createInstance
 
 internal class RsLocalClassMapping
 private constructor (
@@ -733,7 +733,7 @@ private constructor (
                             RsTotalClassMapping.fromLocalMapping(
                                 fromBaseClassInfo(BaseClassInfo.fromKClass(classToMap))
                             ),
-                            rsToMany.elementConverter.createInstance(),
+                            rsToMany.elementConverter.createNoArgInstance(),
                         )
                     )
                 } else if (rsRecursive != null) {
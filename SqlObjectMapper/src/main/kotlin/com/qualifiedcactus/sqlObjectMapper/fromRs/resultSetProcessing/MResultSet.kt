@@ -666,32 +666,52 @@
 package com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing
 
 import com.qualifiedcactus.sqlObjectMapper.MappingProvider
+import com.qualifiedcactus.sqlObjectMapper.MissingColumnException
 import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
+import com.qualifiedcactus.sqlObjectMapper.fromRs.RsPage
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.strategies.FlyweightRowReader
 import com.qualifiedcactus.sqlObjectMapper.fromRs.strategies.ParseRsForNoRelation
 import com.qualifiedcactus.sqlObjectMapper.fromRs.strategies.ParseRsForRecursiveRelation
 import com.qualifiedcactus.sqlObjectMapper.fromRs.strategies.ParseRsForToManyRelation
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedRowMapper
 import java.sql.ResultSet
+import java.util.function.Consumer
 import java.util.stream.Stream
 import kotlin.reflect.KClass
 
 class MResultSet<T:Any>
 internal constructor(
     private val resultSet: ResultSet,
-    private val mapping: RsTotalClassMapping,
+    /**
+     * Resolves the mapping of [T], only called when a reflective path needs it
+     */
+    resolveMapping: () -> RsTotalClassMapping,
+    /**
+     * The query that produced [resultSet], used as a cache key of column resolution
+     */
+    private val sql: String? = null,
+    /**
+     * Row mapper generated for [T], used instead of reflection by [toList], [toSet], [toStream] and [firstOnly]
+     */
+    rowMapper: GeneratedRowMapper<T>? = null,
 ) : ResultSetProcessor<T> {
 
-    constructor(resultSet: ResultSet, type: KClass<T>) : this(resultSet, MappingProvider.mapRsClass(type))
-    constructor(resultSet: ResultSet, type: Class<T>) : this(resultSet, MappingProvider.mapRsClass(type.kotlin))
+    constructor(resultSet: ResultSet, type: KClass<T>) : this(resultSet, { MappingProvider.mapRsClass(type) })
+    constructor(resultSet: ResultSet, type: Class<T>) : this(resultSet, { MappingProvider.mapRsClass(type.kotlin) })
+
+    private val mapping by lazy(LazyThreadSafetyMode.NONE, resolveMapping)
+
+    private val generatedMapperResultSet = rowMapper?.let { GeneratedMapperResultSet(resultSet, it) }
 
     private fun addToCollection(collection: MutableCollection<Any>) {
         when (mapping.relation) {
             RsTotalClassMapping.Relation.NoRelation -> {
-                ParseRsForNoRelation.createRsStreamNoRelation(resultSet, mapping)
+                ParseRsForNoRelation.createRsStreamNoRelation(resultSet, mapping, sql)
                     .forEach { collection.add(it) }
             }
             RsTotalClassMapping.Relation.RecursiveRelation -> {
-                ParseRsForRecursiveRelation.parseRsRecursiveRelation(resultSet, mapping, collection)
+                ParseRsForRecursiveRelation.parseRsRecursiveRelation(resultSet, mapping, collection, sql)
             }
             RsTotalClassMapping.Relation.ToManyRelation -> {
                 ParseRsForToManyRelation.parseRsToManyRelation(resultSet, mapping, collection)
@@ -703,6 +723,9 @@ internal constructor(
      * Convert data into a set of
      */
     override fun toList(): List<T> {
+        if (generatedMapperResultSet != null) {
+            return generatedMapperResultSet.toList()
+        }
         val out = ArrayList<Any>()
         addToCollection(out)
         this.close()
@@ -713,6 +736,9 @@ internal constructor(
      * Convert data into a set of [T] then close this result set
      */
     override fun toSet(): Set<T> {
+        if (generatedMapperResultSet != null) {
+            return generatedMapperResultSet.toSet()
+        }
         val out = HashSet<Any>()
         addToCollection(out)
         this.close()
@@ -720,24 +746,46 @@ internal constructor(
     }
 
     /**
-     * Return a CLOSABLE stream of [T] for this Result Set
+     * Return a CLOSABLE stream of [T] for this Result Set.
+     *
+     * For DTO class with to-many relation, the query must be ordered by the root's id:
+     * a root is emitted as soon as the next root id is read, and only the current root is kept in memory.
+     * For DTO class with recursive relation, each root must be followed by its descendants
+     * (e.g. a depth-first recursive query): a tree is emitted as soon as the next root is read.
+     * Use [Stream.limit] to get the first N roots.
      */
     override fun toStream(): Stream<T> {
-        if (mapping.relation != RsTotalClassMapping.Relation.NoRelation) {
-            throw SqlObjectMapperException("Stream for DTO Class with to-many or recursive relation is not supported")
+        if (generatedMapperResultSet != null) {
+            return generatedMapperResultSet.toStream()
+        }
+        return when (mapping.relation) {
+            RsTotalClassMapping.Relation.NoRelation ->
+                ParseRsForNoRelation.createRsStreamNoRelation(resultSet, mapping, sql) as Stream<T>
+            RsTotalClassMapping.Relation.ToManyRelation ->
+                ParseRsForToManyRelation.createRsStreamOrdered(resultSet, mapping) as Stream<T>
+            RsTotalClassMapping.Relation.RecursiveRelation ->
+                ParseRsForRecursiveRelation.createRsStreamOrdered(resultSet, mapping, sql) as Stream<T>
         }
-        return ParseRsForNoRelation.createRsStreamNoRelation(resultSet, mapping) as Stream<T>
     }
 
     /**
-     * Get data from first row as [T] then close this result set
+     * Get data from first row as [T] then close this result set.
+     *
+     * For DTO class with to-many or recursive relation, get the first root with all of its children.
+     * The query must be ordered as required by [toStream].
      */
     override fun firstOnly(): T? {
+        if (generatedMapperResultSet != null) {
+            return generatedMapperResultSet.firstOnly()
+        }
         if (mapping.relation != RsTotalClassMapping.Relation.NoRelation) {
-            throw SqlObjectMapperException("Fetching first row for DTO Class with to-many or recursive relation is not supported")
+            return toStream().use { stream -> stream.findFirst().orElse(null) }
         }
         val out = if (resultSet.next()) {
-            ParseRsForNoRelation.parseRowNoRelation(resultSet, mapping)
+            ParseRsForNoRelation.parseRowNoRelation(
+                resultSet, mapping,
+                MappingProvider.planRsRow(sql, mapping, resultSet.metaData)
+            )
         } else {
             null
         }
@@ -745,6 +793,59 @@ internal constructor(
         return out as T?
     }
 
+    /**
+     * Call [consumer] for each row then close this result set.
+     * The same instance of [T] (and of its nested properties) is reused and overwritten for every row,
+     * so it must not be kept after [consumer] returns.
+     * [T] and its nested classes must be bean-style classes without to-many or recursive relation.
+     */
+    fun forEachRow(consumer: Consumer<in T>) {
+        try {
+            FlyweightRowReader
+                .create(MappingProvider.planRsRow(sql, mapping, resultSet.metaData), mapping)
+                .forEachRow(resultSet, consumer)
+        } finally {
+            this.close()
+        }
+    }
+
+    /**
+     * Convert data into a page of [T] then close this result set.
+     * The total number of elements is read from [totalColumn] of the first row
+     * (e.g. `count(*) over() as total_elements`), which doesn't need to be a property of [T].
+     * An empty result gives a total of 0.
+     * [T] must be a DTO class without to-many or recursive relation.
+     *
+     * @param page a page number, starting from 0
+     * @param size size of a page
+     */
+    fun toPage(page: Int, size: Int, totalColumn: String): RsPage<T> {
+        try {
+            if (mapping.relation != RsTotalClassMapping.Relation.NoRelation) {
+                throw SqlObjectMapperException(
+                    "${mapping.root.baseClassInfo.kClass} is required to have no to-many or recursive property to be paged by a total column"
+                )
+            }
+            val metaData = resultSet.metaData
+            val label = totalColumn.uppercase()
+            val totalColumnIndex = (1..metaData.columnCount).firstOrNull { metaData.getColumnLabel(it) == label }
+                ?: throw MissingColumnException(mapping.root.baseClassInfo.kClass, listOf(label))
+            val rowPlan = MappingProvider.planRsRow(sql, mapping, metaData)
+
+            val content = ArrayList<Any>(size)
+            var totalElements = 0L
+            while (resultSet.next()) {
+                if (content.isEmpty()) {
+                    totalElements = resultSet.getLong(totalColumnIndex)
+                }
+                content.add(ParseRsForNoRelation.parseRowNoRelation(resultSet, mapping, rowPlan))
+            }
+            return RsPage(content as List<T>, page, size, totalElements)
+        } finally {
+            this.close()
+        }
+    }
+
     override fun close() {
         resultSet.close()
     }
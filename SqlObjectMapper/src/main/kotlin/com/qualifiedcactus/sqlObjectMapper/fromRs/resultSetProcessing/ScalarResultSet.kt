@@ -666,11 +666,14 @@
 @file:Suppress("UNCHECKED_CAST")
 package com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing
 
+import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
 import com.qualifiedcactus.sqlObjectMapper.fromRs.DefaultRsValueExtractor
 import java.sql.ResultSet
-import java.util.stream.Collectors
-import java.util.stream.Stream
-import java.util.stream.StreamSupport
+import java.util.Spliterator
+import java.util.Spliterators
+import java.util.function.IntConsumer
+import java.util.function.LongConsumer
+import java.util.stream.*
 import kotlin.reflect.KClass
 
 /**
@@ -727,6 +730,147 @@ constructor(
         return out as T?
     }
 
+    /**
+     * Get values of the first column as a [LongArray] then close this ResultSet.
+     * Values are read with [ResultSet.getLong] and are never boxed.
+     * @throws SqlObjectMapperException if a value is NULL
+     */
+    fun toLongArray(): LongArray {
+        try {
+            var out = LongArray(initialCapacity())
+            var size = 0
+            while (resultSet.next()) {
+                if (size == out.size) {
+                    out = out.copyOf(size shl 1)
+                }
+                out[size++] = getLong()
+            }
+            return if (size == out.size) out else out.copyOf(size)
+        } finally {
+            this.close()
+        }
+    }
+
+    /**
+     * Get values of the first column as an [IntArray] then close this ResultSet.
+     * Values are read with [ResultSet.getInt] and are never boxed.
+     * @throws SqlObjectMapperException if a value is NULL
+     */
+    fun toIntArray(): IntArray {
+        try {
+            var out = IntArray(initialCapacity())
+            var size = 0
+            while (resultSet.next()) {
+                if (size == out.size) {
+                    out = out.copyOf(size shl 1)
+                }
+                out[size++] = getInt()
+            }
+            return if (size == out.size) out else out.copyOf(size)
+        } finally {
+            this.close()
+        }
+    }
+
+    /**
+     * Get values of the first column as a [DoubleArray] then close this ResultSet.
+     * Values are read with [ResultSet.getDouble] and are never boxed.
+     * @throws SqlObjectMapperException if a value is NULL
+     */
+    fun toDoubleArray(): DoubleArray {
+        try {
+            var out = DoubleArray(initialCapacity())
+            var size = 0
+            while (resultSet.next()) {
+                if (size == out.size) {
+                    out = out.copyOf(size shl 1)
+                }
+                out[size++] = getDouble()
+            }
+            return if (size == out.size) out else out.copyOf(size)
+        } finally {
+            this.close()
+        }
+    }
+
+    /**
+     * Get distinct values of the first column as a [LongHashSet] then close this ResultSet.
+     * @throws SqlObjectMapperException if a value is NULL
+     */
+    fun toLongSet(): LongHashSet {
+        try {
+            val out = LongHashSet(initialCapacity())
+            while (resultSet.next()) {
+                out.add(getLong())
+            }
+            return out
+        } finally {
+            this.close()
+        }
+    }
+
+    /**
+     * Return a CLOSABLE [LongStream] of values of the first column.
+     * @throws SqlObjectMapperException if a value is NULL
+     */
+    fun toLongStream(): LongStream {
+        val spliterator = object : Spliterators.AbstractLongSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+            override fun tryAdvance(action: LongConsumer): Boolean {
+                if (!resultSet.next()) {
+                    return false
+                }
+                action.accept(getLong())
+                return true
+            }
+        }
+        return StreamSupport.longStream(spliterator, false).onClose { this.close() }
+    }
+
+    /**
+     * Return a CLOSABLE [IntStream] of values of the first column.
+     * @throws SqlObjectMapperException if a value is NULL
+     */
+    fun toIntStream(): IntStream {
+        val spliterator = object : Spliterators.AbstractIntSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+            override fun tryAdvance(action: IntConsumer): Boolean {
+                if (!resultSet.next()) {
+                    return false
+                }
+                action.accept(getInt())
+                return true
+            }
+        }
+        return StreamSupport.intStream(spliterator, false).onClose { this.close() }
+    }
+
+    /**
+     * The fetch size as a hint of the number of rows, capped because a large fetch size
+     * doesn't mean that many rows are returned
+     */
+    private fun initialCapacity(): Int = resultSet.fetchSize.coerceIn(16, 1024)
+
+    private fun getLong(): Long {
+        val value = resultSet.getLong(1)
+        if (resultSet.wasNull()) throw nullValueException()
+        return value
+    }
+
+    private fun getInt(): Int {
+        val value = resultSet.getInt(1)
+        if (resultSet.wasNull()) throw nullValueException()
+        return value
+    }
+
+    private fun getDouble(): Double {
+        val value = resultSet.getDouble(1)
+        if (resultSet.wasNull()) throw nullValueException()
+        return value
+    }
+
+    private fun nullValueException() = SqlObjectMapperException(
+        "Column ${resultSet.metaData.getColumnLabel(1)} contains NULL, which has no primitive value"
+    )
+
     override fun close() {
         resultSet.close()
     }
@@ -666,40 +666,54 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.strategies
 
-import com.qualifiedcactus.sqlObjectMapper.MissingColumnException
+import com.qualifiedcactus.sqlObjectMapper.MappingProvider
 import com.qualifiedcactus.sqlObjectMapper.fromRs.*
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.*
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.ClassProperty.*
 import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.RsSpliterator
 import java.sql.ResultSet
-import java.sql.ResultSetMetaData
 import java.util.stream.Stream
 import java.util.stream.StreamSupport
 
 internal object ParseRsForNoRelation {
-    fun createRsStreamNoRelation(resultSet: ResultSet, totalMapping: RsTotalClassMapping): Stream<Any> {
+    /**
+     * @param sql the query that produced [resultSet], used to cache the [RowPlan] across executions
+     */
+    fun createRsStreamNoRelation(
+        resultSet: ResultSet,
+        totalMapping: RsTotalClassMapping,
+        sql: String? = null,
+    ): Stream<Any> {
+        val rowPlan = MappingProvider.planRsRow(sql, totalMapping, resultSet.metaData)
         val rsToData = fun (rs: ResultSet): Any {
-            return parseRowNoRelation(rs, totalMapping)
+            return parseRowNoRelation(rs, totalMapping, rowPlan)
         }
         return StreamSupport.stream(RsSpliterator(resultSet, rsToData), false)
             .onClose{ resultSet.close() }
     }
 
-    fun parseRowNoRelation(resultSet: ResultSet, totalMapping: RsTotalClassMapping): Any {
-        val rsMetaData = resultSet.metaData
+    fun parseRowNoRelation(
+        resultSet: ResultSet,
+        totalMapping: RsTotalClassMapping,
+        rowPlan: RowPlan = MappingProvider.planRsRow(null, totalMapping, resultSet.metaData),
+    ): Any {
+        val compiledMapper = rowPlan.compiledMapper
+        if (compiledMapper != null) {
+            return compiledMapper.invokeExact(resultSet) as Any
+        }
+
         val paramValues = arrayOfNulls<Any?>(totalMapping.root.propertiesCount)
-        var matchedColumnCount = 0
+        val columnIndexes = rowPlan.columnIndexes
+        val columnInstructions = rowPlan.instructions
+        val columnExtractors = rowPlan.extractors
 
-        for (i in 1..rsMetaData.columnCount) {
-            val columnLabel = rsMetaData.getColumnLabel(i)
-            val instructions = totalMapping.addressDict[columnLabel] ?: continue
-            matchedColumnCount++
+        for (planIndex in columnIndexes.indices) {
             var curParamArray = paramValues
-            for (instruction in instructions) {
+            for (instruction in columnInstructions[planIndex]) {
                 when (val p = instruction.property) {
                     is SimpleProperty -> {
                         curParamArray[p.propertyInfo.index] =
-                            p.extractor.extractValueByIndex(resultSet, i)
+                            columnExtractors[planIndex]!!.extractValueByIndex(resultSet, columnIndexes[planIndex])
                     }
                     is NestedProperty -> {
                         val nextArray = (curParamArray[p.propertyInfo.index] as Array<Any?>?) ?: run {
@@ -713,11 +727,6 @@ internal object ParseRsForNoRelation {
                 }
             }
         }
-
-        // missing column in ResultSet found, find missing column and throw
-        if (matchedColumnCount != totalMapping.addressDict.size) {
-            findMissingColumnAndRow(rsMetaData, totalMapping)
-        }
         return createObject(paramValues, totalMapping.root, false)!!
     }
 
@@ -748,22 +757,4 @@ internal object ParseRsForNoRelation {
         }
         return curLocal.baseClassInfo.objectSupplier.invoke(rawParamValues)
     }
-
-    private fun findMissingColumnAndRow(rsMetaData: ResultSetMetaData, totalMapping: RsTotalClassMapping) {
-        val missingColumnList = ArrayList<String>()
-        for (requiredColumnLabel in totalMapping.addressDict.keys) {
-            var found = false
-            for (i in 1..rsMetaData.columnCount) {
-                if (requiredColumnLabel == rsMetaData.getColumnLabel(i)) {
-                    found = true
-                    break
-                }
-            }
-            if (!found) {
-                missingColumnList.add(requiredColumnLabel)
-            }
-        }
-        throw MissingColumnException(totalMapping.root.baseClassInfo.kClass, missingColumnList)
-    }
-
 }
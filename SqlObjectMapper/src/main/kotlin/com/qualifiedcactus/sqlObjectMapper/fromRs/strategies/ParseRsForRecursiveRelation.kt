@@ -666,15 +666,17 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.strategies
 
-import com.qualifiedcactus.sqlObjectMapper.MissingColumnException
+import com.qualifiedcactus.sqlObjectMapper.MappingProvider
 import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.AddressDictionary.*
-import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.ClassProperty.*
+import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RowPlan
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsLocalClassMapping
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
 import java.sql.ResultSet
-import java.sql.ResultSetMetaData
-import java.util.concurrent.atomic.AtomicReference
+import java.util.Spliterator
+import java.util.function.Consumer
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
 
 
 /**
@@ -683,155 +685,271 @@ import java.util.concurrent.atomic.AtomicReference
  * Example: [PostgreSQL's CTE](https://www.postgresql.org/docs/current/queries-with.html)
  */
 internal object ParseRsForRecursiveRelation {
+    /**
+     * @param sql the query that produced [resultSet], used to cache the [RowPlan] across executions
+     */
     fun parseRsRecursiveRelation(
         resultSet: ResultSet,
         totalClassMapping: RsTotalClassMapping,
-        resultCollection: MutableCollection<Any>
+        resultCollection: MutableCollection<Any>,
+        sql: String? = null,
     ) {
-        val objectDict = resultSet.use {rs->
-            val objectDict = HashMap<IdValue, RowData>()
+        resultSet.use { rs ->
+            val assembler = Assembler(MappingProvider.planRsRow(sql, totalClassMapping, rs.metaData), totalClassMapping)
             while (rs.next()) {
-                val rowData = parseRow(resultSet, totalClassMapping)
-                if (rowData.objectId == IdValue.NullIdValue) {
-                    throw SqlObjectMapperException("ID column(s) is null, which shouldn't be the case")
-                }
-                objectDict[rowData.objectId] = rowData
-
-                if (rowData.parentId == IdValue.NullIdValue) {
-                    resultCollection.add(rowData.objectValue)
-                }
+                assembler.readRow(rs)?.let { resultCollection.add(it) }
             }
-            objectDict
+            assembler.checkOrphans()
         }
-        objectDict.forEach { (_, rowData) ->
-            if (rowData.parentId != IdValue.NullIdValue) {
-                val parent = objectDict[rowData.parentId] ?: throw SqlObjectMapperException(
-                    "Can't find parent object with the id value of ${rowData.parentId}")
-                parent.recursiveCollection.add(rowData.objectValue)
-            }
-        }
-
     }
 
-    private fun parseRow(
+    /**
+     * Stream root trees of a result set ordered by root, each root followed by its descendants
+     * (e.g. a depth-first recursive query).
+     * A root is emitted as soon as the next root is read, and only the current tree is kept.
+     * @param sql the query that produced [resultSet], used to cache the [RowPlan] across executions
+     */
+    fun createRsStreamOrdered(
         resultSet: ResultSet,
         totalClassMapping: RsTotalClassMapping,
-    ): RowData {
+        sql: String? = null,
+    ): Stream<Any> {
+        val assembler = Assembler(MappingProvider.planRsRow(sql, totalClassMapping, resultSet.metaData), totalClassMapping)
+        return StreamSupport.stream(OrderedSpliterator(resultSet, assembler), false)
+            .onClose { resultSet.close() }
+    }
 
-        val rsMetaData = resultSet.metaData
-        val paramValues = arrayOfNulls<Any?>(totalClassMapping.root.propertiesCount)
-        val objectIdValues = arrayOfNulls<Any?>(totalClassMapping.idProperties.size)
-        val parentIdValues = arrayOfNulls<Any?>(totalClassMapping.idProperties.size)
-        val recursiveCollection = AtomicReference<MutableCollection<Any?>?>()
-        var matchedColumnsCount = 0
-        
-        for (i in 1..rsMetaData.columnCount) {
-            val columnLabel = rsMetaData.getColumnLabel(i)
-            val instructions = totalClassMapping.addressDict[columnLabel] ?: continue
-            matchedColumnsCount++
-            var curParamArray = paramValues
+    private class OrderedSpliterator(
+        private val resultSet: ResultSet,
+        private val assembler: Assembler,
+    ) : Spliterator<Any> {
+        private var currentRoot: Any? = null
 
-            for (instruction in instructions) {
-                when (instruction) {
-                    is SimplePropertyInstruction -> {
-                        val value = instruction.property.extractor.extractValueByIndex(resultSet, i)
-                        curParamArray[instruction.property.propertyInfo.index] = value
-                        if (instruction.property.isId) {
-                            objectIdValues[instruction.property.idIndex] = value
-                        }
-                    }
-                    is NestedPropertyInstruction -> {
-                        val nextArray =
-                            (curParamArray[instruction.property.propertyInfo.index] as Array<Any?>?) ?: run {
-                                val array = arrayOfNulls<Any?>(instruction.property.localClassMapping.propertiesCount)
-                                curParamArray[instruction.property.propertyInfo.index] = array
-                                array
-                            }
-                        curParamArray = nextArray
+        override fun tryAdvance(action: Consumer<in Any>): Boolean {
+            while (resultSet.next()) {
+                val isRoot = assembler.readIds(resultSet)
+                val finishedRoot = if (isRoot) currentRoot else null
+                if (finishedRoot != null) {
+                    assembler.checkOrphans()
+                    assembler.clear()
+                }
+                val value = assembler.readObject(resultSet, isRoot)
+                if (isRoot) {
+                    currentRoot = value
+                }
+                if (finishedRoot != null) {
+                    action.accept(finishedRoot)
+                    return true
+                }
+            }
+            assembler.checkOrphans()
+            val lastRoot = currentRoot ?: return false
+            currentRoot = null
+            action.accept(lastRoot)
+            return true
+        }
+
+        override fun trySplit(): Spliterator<Any>? = null
+        override fun estimateSize(): Long = Long.MAX_VALUE
+        override fun characteristics(): Int = Spliterator.NONNULL or Spliterator.ORDERED
+    }
+
+    /**
+     * Build trees in a single pass: an object is added to its parent's collection as soon as both are read.
+     * Objects read before their parent are kept until the parent is read.
+     */
+    private class Assembler(
+        private val rowPlan: RowPlan,
+        private val totalClassMapping: RsTotalClassMapping,
+    ) {
+        private val objectIdReader: IdReader
+        private val parentIdReader: IdReader
+
+        init {
+            val idCount = totalClassMapping.idProperties.size
+            val objectIdColumns = IntArray(idCount)
+            val parentIdColumns = IntArray(idCount)
+            rowPlan.instructions.forEachIndexed { planIndex, instructions ->
+                when (val instruction = instructions.last()) {
+                    is SimplePropertyInstruction -> if (instruction.property.isId) {
+                        objectIdColumns[instruction.property.idIndex] = rowPlan.columnIndexes[planIndex]
                     }
                     is RecursivePropertyInstruction -> {
-                        parentIdValues[instruction.parentIdIndex] =
-                            totalClassMapping.idProperties[instruction.parentIdIndex]
-                                .extractor.extractValueByIndex(resultSet, i)
+                        parentIdColumns[instruction.parentIdIndex] = rowPlan.columnIndexes[planIndex]
                     }
+                    else -> {}
                 }
             }
-
+            objectIdReader = IdReader.create(totalClassMapping.idProperties, objectIdColumns)
+            parentIdReader = IdReader.create(totalClassMapping.idProperties, parentIdColumns)
         }
 
-        if (matchedColumnsCount != totalClassMapping.addressDict.size) {
-            findMissingColumnAndRow(rsMetaData, totalClassMapping)
+        /**
+         * Recursive collection of each object read
+         */
+        private val collections = IdTable<MutableCollection<Any?>>()
+        /**
+         * Objects waiting for their parent, by parent id
+         */
+        private val orphans = IdTable<Orphans>()
+        private var orphansCount = 0
+        /**
+         * Recursive collection of the object being created
+         */
+        private var curCollection: MutableCollection<Any?>? = null
+
+        /**
+         * @return the object of the current row if it is a root, null otherwise
+         */
+        fun readRow(resultSet: ResultSet): Any? {
+            val isRoot = readIds(resultSet)
+            return readObject(resultSet, isRoot)
         }
-        return RowData(
-            IdValue.fromValues(*objectIdValues),
-            createObject(paramValues, totalClassMapping.root, false, recursiveCollection)!!,
-            recursiveCollection.get() ?: throw SqlObjectMapperException(
-                "Internal Error: Recursive collection not found in ${totalClassMapping.root.baseClassInfo.kClass}"),
-            IdValue.fromValues(*parentIdValues)
-        )
-    }
-    
-    private fun createObject(
-        rawParamValues: Array<Any?>,
-        curLocal: RsLocalClassMapping,
-        nullIfAllIsNull: Boolean,
-        recursiveCollection: AtomicReference<MutableCollection<Any?>?>,
-    ): Any? {
-        var isNull = nullIfAllIsNull
-        if (isNull) {
-            for (simpleProperty in curLocal.simpleProperties) {
-                isNull = isNull && rawParamValues[simpleProperty.propertyInfo.index] == null
+
+        /**
+         * Read the id and the parent id of the current row
+         * @return true if the current row is a root (its parent id is null)
+         */
+        fun readIds(resultSet: ResultSet): Boolean {
+            if (!objectIdReader.read(resultSet)) {
+                throw SqlObjectMapperException("ID column(s) is null, which shouldn't be the case")
             }
+            return !parentIdReader.read(resultSet)
         }
 
-        if (curLocal.recursiveProperties.isNotEmpty()) {
-            val property = curLocal.recursiveProperties.first()
-            val collection = property.collectionSupplier.invoke()
-            rawParamValues[property.propertyInfo.index] = collection
-            recursiveCollection.set(collection)
-        }
-        curLocal.nestedProperties.forEach { nestedProperty ->
-            val nestedValue = createObject(
-                rawParamValues[nestedProperty.propertyInfo.index] as Array<Any?>,
-                nestedProperty.localClassMapping,
-                nestedProperty.nullIfAllIsNull,
-                recursiveCollection,
+        /**
+         * Read the object of the current row, whose ids were read by [readIds]
+         * @return the object if it is a root, null otherwise
+         */
+        fun readObject(resultSet: ResultSet, isRoot: Boolean): Any? {
+            val value = parseRow(resultSet)
+            val collection = curCollection ?: throw SqlObjectMapperException(
+                "Internal Error: Recursive collection not found in ${totalClassMapping.root.baseClassInfo.kClass}"
             )
-            if (nullIfAllIsNull) {
-                isNull = isNull && nestedValue == null
+            collections[objectIdReader] = collection
+
+            val children = orphans[objectIdReader]
+            if (children != null && children !== NO_ORPHANS) {
+                collection.addAll(children.values)
+                orphansCount -= children.values.size
+                orphans[objectIdReader] = NO_ORPHANS
             }
-            rawParamValues[nestedProperty.propertyInfo.index] = nestedValue
-        }
 
-        if (isNull && curLocal.recursiveProperties.isEmpty()) {
+            if (isRoot) {
+                return value
+            }
+            val parentCollection = collections[parentIdReader]
+            if (parentCollection != null) {
+                parentCollection.add(value)
+            } else {
+                val siblings = orphans[parentIdReader]?.takeIf { it !== NO_ORPHANS } ?: run {
+                    Orphans(parentIdReader.toIdValue()).also { orphans[parentIdReader] = it }
+                }
+                siblings.values.add(value)
+                orphansCount++
+            }
             return null
-        } else {
-            return curLocal.baseClassInfo.objectSupplier.invoke(rawParamValues)
         }
-    }
 
-    private fun findMissingColumnAndRow(rsMetaData: ResultSetMetaData, totalMapping: RsTotalClassMapping) {
-        val missingColumnList = ArrayList<String>()
-        for (requiredColumnLabel in totalMapping.addressDict.keys) {
-            var found = false
-            for (i in 1..rsMetaData.columnCount) {
-                if (requiredColumnLabel == rsMetaData.getColumnLabel(i)) {
-                    found = true
-                    break
+        /**
+         * @throws SqlObjectMapperException if an object's parent was never read
+         */
+        fun checkOrphans() {
+            if (orphansCount == 0) {
+                return
+            }
+            orphans.forEachValue {
+                if (it.values.isNotEmpty()) {
+                    throw SqlObjectMapperException("Can't find parent object with the id value of ${it.parentId}")
                 }
             }
-            if (!found) {
-                missingColumnList.add(requiredColumnLabel)
+        }
+
+        /**
+         * Forget all objects read
+         */
+        fun clear() {
+            collections.clear()
+            orphans.clear()
+            orphansCount = 0
+        }
+
+        private fun parseRow(resultSet: ResultSet): Any {
+            val paramValues = arrayOfNulls<Any?>(totalClassMapping.root.propertiesCount)
+            val columnIndexes = rowPlan.columnIndexes
+            val columnInstructions = rowPlan.instructions
+
+            for (planIndex in columnIndexes.indices) {
+                var curParamArray = paramValues
+                for (instruction in columnInstructions[planIndex]) {
+                    when (instruction) {
+                        is SimplePropertyInstruction -> {
+                            curParamArray[instruction.property.propertyInfo.index] =
+                                rowPlan.extractors[planIndex]!!.extractValueByIndex(resultSet, columnIndexes[planIndex])
+                        }
+                        is NestedPropertyInstruction -> {
+                            val nextArray =
+                                (curParamArray[instruction.property.propertyInfo.index] as Array<Any?>?) ?: run {
+                                    val array = arrayOfNulls<Any?>(instruction.property.localClassMapping.propertiesCount)
+                                    curParamArray[instruction.property.propertyInfo.index] = array
+                                    array
+                                }
+                            curParamArray = nextArray
+                        }
+                        // read by parentIdReader
+                        is RecursivePropertyInstruction -> {}
+                    }
+                }
+            }
+            curCollection = null
+            return createObject(paramValues, totalClassMapping.root, false)!!
+        }
+
+        private fun createObject(
+            rawParamValues: Array<Any?>,
+            curLocal: RsLocalClassMapping,
+            nullIfAllIsNull: Boolean,
+        ): Any? {
+            var isNull = nullIfAllIsNull
+            if (isNull) {
+                for (simpleProperty in curLocal.simpleProperties) {
+                    isNull = isNull && rawParamValues[simpleProperty.propertyInfo.index] == null
+                }
+            }
+
+            if (curLocal.recursiveProperties.isNotEmpty()) {
+                val property = curLocal.recursiveProperties.first()
+                val collection = property.collectionSupplier.invoke()
+                rawParamValues[property.propertyInfo.index] = collection
+                curCollection = collection
+            }
+            curLocal.nestedProperties.forEach { nestedProperty ->
+                val nestedValue = createObject(
+                    rawParamValues[nestedProperty.propertyInfo.index] as Array<Any?>,
+                    nestedProperty.localClassMapping,
+                    nestedProperty.nullIfAllIsNull,
+                )
+                if (nullIfAllIsNull) {
+                    isNull = isNull && nestedValue == null
+                }
+                rawParamValues[nestedProperty.propertyInfo.index] = nestedValue
+            }
+
+            if (isNull && curLocal.recursiveProperties.isEmpty()) {
+                return null
+            } else {
+                return curLocal.baseClassInfo.objectSupplier.invoke(rawParamValues)
             }
         }
-        throw MissingColumnException(totalMapping.root.baseClassInfo.kClass, missingColumnList)
     }
-    
-    private data class RowData(
-        val objectId: IdValue,
-        val objectValue: Any,
-        val recursiveCollection: MutableCollection<Any?>,
+
+    private class Orphans(
         val parentId: IdValue,
+        val values: MutableList<Any> = ArrayList(),
     )
-}
 
+    /**
+     * Marks a parent whose orphans have been adopted
+     */
+    private val NO_ORPHANS = Orphans(IdValue.NullIdValue, mutableListOf())
+}
\ No newline at end of file
@@ -665,11 +665,17 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.strategies
 
-import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsLocalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.MissingColumnException
+import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
+import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RowPlan
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
-import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.ClassProperty.*
+import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.ToManyGraph
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.LongHashSet
 import java.sql.ResultSet
-import kotlin.reflect.KClass
+import java.util.Spliterator
+import java.util.function.Consumer
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
 
 internal object ParseRsForToManyRelation {
 
@@ -681,141 +687,309 @@ internal object ParseRsForToManyRelation {
         totalClassMapping: RsTotalClassMapping,
         resultCollection: MutableCollection<Any>,
     ) {
-        val objectDict = HashMap<KClass<*>, HashMap<IdValue, ObjectInfo>>()
-        initializeObjectDict(totalClassMapping, objectDict)
         resultSet.use { rs ->
+            val assembler = Assembler(ToManyGraph.fromMetaData(rs.metaData, totalClassMapping))
             while (rs.next()) {
-                iterateThroughRelations(
-                    resultSet, resultCollection, objectDict,
-                    totalClassMapping, null
-                )
+                assembler.readRow(rs, resultCollection)
             }
         }
-
     }
 
-    private fun initializeObjectDict(
+    /**
+     * Like [parseRsToManyRelation], but return roots by the value of their single id column
+     * @throws SqlObjectMapperException if the root has more than 1 id column
+     */
+    fun parseRsToManyRelationById(
+        resultSet: ResultSet,
         totalClassMapping: RsTotalClassMapping,
-        objectDict: HashMap<KClass<*>, HashMap<IdValue, ObjectInfo>>,
-    ) {
-        objectDict[totalClassMapping.root.baseClassInfo.kClass] = HashMap()
-        totalClassMapping.totalToManyProperties.forEach { toManyProperty ->
-            initializeObjectDict(toManyProperty.elementTotalMapping, objectDict)
+    ): Map<Any, Any> {
+        if (totalClassMapping.idProperties.size != 1) {
+            throw SqlObjectMapperException(
+                "${totalClassMapping.root.baseClassInfo.kClass} is required to have a single id column"
+            )
         }
+        val out = HashMap<Any, Any>()
+        resultSet.use { rs ->
+            val graph = ToManyGraph.fromMetaData(rs.metaData, totalClassMapping)
+            val idExtractor = graph.nodes[0].idProperties[0].extractor
+            val idColumnIndex = graph.nodes[0].idColumnIndexes[0]
+            val assembler = Assembler(graph)
+            while (rs.next()) {
+                if (!assembler.readRootId(rs)) {
+                    continue
+                }
+                val isNewRoot = !assembler.containsRoot()
+                val root = assembler.readRoot(rs, null)
+                if (isNewRoot) {
+                    out[idExtractor.extractValueByIndex(rs, idColumnIndex)!!] = root.value
+                }
+            }
+        }
+        return out
     }
 
-    private fun iterateThroughRelations(
+    /**
+     * Stream roots of a result set that is ordered by the root's id.
+     * A root is emitted as soon as the root id changes, and only the current root's objects are kept,
+     * so children shared by several roots are created once per root.
+     */
+    fun createRsStreamOrdered(
         resultSet: ResultSet,
-        resultCollection: MutableCollection<Any>,
-        objectDict: HashMap<KClass<*>, HashMap<IdValue, ObjectInfo>>,
-        curTotal: RsTotalClassMapping,
-        parent: ObjectInfo?,
-    ) {
-        val curId = getIdValues(resultSet, curTotal)
-        if (curId == IdValue.NullIdValue) {
-            return
-        }
-        // check if object already added to dict
-        val curObject: ObjectInfo = objectDict[curTotal.root.baseClassInfo.kClass]!![curId] ?: run {
-            val curRowData = parseRow(resultSet, curTotal)
-            objectDict[curTotal.root.baseClassInfo.kClass]!![curId] = curRowData
-            curRowData.idValue = curId
-
-            // null parent means this object is root -> add to output collection
-            if (parent == null) {
-                resultCollection.add(curRowData.value)
+        totalClassMapping: RsTotalClassMapping,
+    ): Stream<Any> {
+        val graph = ToManyGraph.fromMetaData(resultSet.metaData, totalClassMapping)
+        return StreamSupport.stream(OrderedSpliterator(resultSet, Assembler(graph)), false)
+            .onClose { resultSet.close() }
+    }
+
+    /**
+     * Read roots without joining their to-many properties, which are filled by [SplitRoots.readChildren]
+     */
+    fun readSplitRoots(resultSet: ResultSet, totalClassMapping: RsTotalClassMapping): SplitRoots {
+        return resultSet.use { rs -> SplitRoots(rs, totalClassMapping) }
+    }
+
+    /**
+     * Roots read without their to-many properties, whose collections are left empty
+     */
+    class SplitRoots(resultSet: ResultSet, totalClassMapping: RsTotalClassMapping) {
+        /**
+         * Roots in the order they are read
+         */
+        val values = ArrayList<Any>()
+        /**
+         * Id of the root at the same position in [values]
+         */
+        val idValues = ArrayList<Any>()
+        private val toManyProperties = totalClassMapping.totalToManyProperties
+        private val rootNode: ToManyGraph.Node
+        private val assembler: Assembler
+
+        init {
+            val graph = ToManyGraph.fromMetaData(resultSet.metaData, totalClassMapping, withChildren = false)
+            rootNode = graph.nodes[0]
+            if (rootNode.idProperties.size != 1) {
+                throw SqlObjectMapperException(
+                    "Split query requires ${totalClassMapping.root.baseClassInfo.kClass} to have a single id column"
+                )
+            }
+            assembler = Assembler(graph)
+            val idExtractor = rootNode.idProperties[0].extractor
+            val idColumnIndex = rootNode.idColumnIndexes[0]
+            while (resultSet.next()) {
+                if (!assembler.readRootId(resultSet) || assembler.containsRoot()) {
+                    continue
+                }
+                assembler.readRoot(resultSet, values)
+                idValues.add(idExtractor.extractValueByIndex(resultSet, idColumnIndex)!!)
             }
-            curRowData
         }
 
-        // if curObject is a child and parent haven't add this child yet
-        if (parent != null && !curObject.parents.containsKey(parent.idValue)) {
-            curObject.parents[parent.idValue] = parent
-            parent.childrenCollections[curTotal.root.baseClassInfo.kClass]!!
-                .addToCollection(curObject.value)
-        }
+        /**
+         * Read the elements of a to-many property from the result of a separate query, then close [resultSet].
+         * Thread safe as long as each property is read by one thread.
+         * @param slot index of the property in [RsTotalClassMapping.totalToManyProperties] of the roots
+         * @param parentIdColumn label of the column containing the id of each element's parent
+         */
+        fun readChildren(resultSet: ResultSet, slot: Int, parentIdColumn: String) {
+            resultSet.use { rs ->
+                val toManyProperty = toManyProperties[slot]
+                val labels = RowPlan.getColumnLabels(rs.metaData)
+                val parentIdColumnIndex = labels.indexOf(parentIdColumn) + 1
+                if (parentIdColumnIndex == 0) {
+                    throw MissingColumnException(
+                        toManyProperty.elementTotalMapping.root.baseClassInfo.kClass, listOf(parentIdColumn)
+                    )
+                }
+                val parentIdReader = IdReader.create(rootNode.idProperties, intArrayOf(parentIdColumnIndex))
+                val children = Assembler(ToManyGraph.fromColumnLabels(labels, toManyProperty.elementTotalMapping))
+                val edges = LongHashSet()
 
-        curTotal.totalToManyProperties.forEach { toManyProperty ->
-            iterateThroughRelations(
-                resultSet, resultCollection,
-                objectDict, toManyProperty.elementTotalMapping, curObject
-            )
+                while (rs.next()) {
+                    if (!parentIdReader.read(rs) || !children.readRootId(rs)) {
+                        continue
+                    }
+                    val parent = assembler.findRoot(parentIdReader) ?: continue
+                    val child = children.readRoot(rs, null)
+                    if (edges.add(edgeOf(parent, child))) {
+                        parent.childrenCollections[slot]!!.add(toManyProperty.elementConverter.convert(child.value))
+                    }
+                }
+            }
         }
     }
 
-    private fun getIdValues(resultSet: ResultSet, curTotal: RsTotalClassMapping): IdValue {
-        if (curTotal.idProperties.size == 1) {
-            return curTotal.idProperties[0].let {
-                IdValue.fromValues(it.extractor.extractValueByName(resultSet, it.columnName))
-            }
-        } else {
-            val values = arrayOfNulls<Any?>(curTotal.idProperties.size)
-            curTotal.idProperties.forEachIndexed { i, id ->
-                values[i] = id.extractor.extractValueByName(resultSet, id.columnName)
+    private class OrderedSpliterator(
+        private val resultSet: ResultSet,
+        private val assembler: Assembler,
+    ) : Spliterator<Any> {
+        private var currentRoot: ObjectInfo? = null
+
+        override fun tryAdvance(action: Consumer<in Any>): Boolean {
+            while (resultSet.next()) {
+                if (!assembler.readRootId(resultSet)) {
+                    continue
+                }
+                // only the current root is kept, so a root id that isn't found is a new root
+                val finishedRoot = currentRoot?.takeIf { !assembler.containsRoot() }
+                if (finishedRoot != null) {
+                    assembler.clear()
+                }
+                currentRoot = assembler.readRoot(resultSet, null)
+                if (finishedRoot != null) {
+                    action.accept(finishedRoot.value)
+                    return true
+                }
             }
-            return IdValue.fromValues(*values)
+            val lastRoot = currentRoot ?: return false
+            currentRoot = null
+            action.accept(lastRoot.value)
+            return true
         }
+
+        override fun trySplit(): Spliterator<Any>? = null
+        override fun estimateSize(): Long = Long.MAX_VALUE
+        override fun characteristics(): Int = Spliterator.NONNULL or Spliterator.ORDERED
     }
 
+    private class Assembler(graph: ToManyGraph) {
+        private val nodes = graph.nodes
+        /**
+         * Objects already read, by node index
+         */
+        private val objectDicts = Array(nodes.size) { IdTable<ObjectInfo>() }
+        private val idReaders = Array(nodes.size) { i -> IdReader.create(nodes[i].idProperties, nodes[i].idColumnIndexes) }
+        /**
+         * Parent-child pairs already linked, by child node index.
+         * A pair is the [ObjectInfo.serial] of the parent and of the child packed in a long.
+         */
+        private val edgeSets = Array(nodes.size) { LongHashSet() }
 
-    private fun parseRow(
-        resultSet: ResultSet,
-        totalClassMapping: RsTotalClassMapping,
-    ): ObjectInfo {
-        val relationalCollections =
-            HashMap<KClass<*>, RelationalCollection>(totalClassMapping.totalToManyProperties.size)
-        val rowObject = createObject(resultSet, totalClassMapping.root, relationalCollections, false)!!
-        return ObjectInfo(rowObject, relationalCollections)
-    }
+        fun readRow(resultSet: ResultSet, resultCollection: MutableCollection<Any>?) {
+            if (readRootId(resultSet)) {
+                readRoot(resultSet, resultCollection)
+            }
+        }
 
-    private fun createObject(
-        resultSet: ResultSet,
-        curLocal: RsLocalClassMapping,
-        collections: MutableMap<KClass<*>, RelationalCollection>,
-        nullIfAllIsNull: Boolean,
-    ): Any? {
-        val paramValues = arrayOfNulls<Any?>(curLocal.propertiesCount)
-        var isNull = nullIfAllIsNull && curLocal.toManyProperties.isEmpty()
-
-        for (simpleProperty in curLocal.simpleProperties) {
-            val value = simpleProperty.extractor.extractValueByName(resultSet, simpleProperty.columnName)
-            paramValues[simpleProperty.propertyInfo.index] = value
-            isNull = isNull && value == null
+        /**
+         * @return false if the root id of the current row is null
+         */
+        fun readRootId(resultSet: ResultSet): Boolean = idReaders[0].read(resultSet)
+
+        /**
+         * @return true if the root whose id was read by [readRootId] has been read before
+         */
+        fun containsRoot(): Boolean = objectDicts[0][idReaders[0]] != null
+
+        /**
+         * @return the root of the id read by [reader], null if it hasn't been read
+         */
+        fun findRoot(reader: IdReader): ObjectInfo? = objectDicts[0][reader]
+
+        /**
+         * Read the root whose id was read by [readRootId], then its children
+         * @param resultCollection collection to add new roots to
+         */
+        fun readRoot(resultSet: ResultSet, resultCollection: MutableCollection<Any>?): ObjectInfo {
+            return readRelations(resultSet, nodes[0], null, resultCollection)
         }
 
-        for (toManyProperty in curLocal.toManyProperties) {
-            val collection = toManyProperty.collectionSupplier.invoke()
-            paramValues[toManyProperty.propertyInfo.index] = collection
-            collections[toManyProperty.elementTotalMapping.root.baseClassInfo.kClass] =
-                RelationalCollection(toManyProperty, collection)
+        fun clear() {
+            objectDicts.forEach { it.clear() }
+            edgeSets.forEach { it.clear() }
         }
 
-        for (nestedProperty in curLocal.nestedProperties) {
-            val value = createObject(
-                resultSet, nestedProperty.localClassMapping, collections, nestedProperty.nullIfAllIsNull
-            )
-            paramValues[nestedProperty.propertyInfo.index] = value
-            isNull = isNull && value == null
+        private fun readRelations(
+            resultSet: ResultSet,
+            node: ToManyGraph.Node,
+            parent: ObjectInfo?,
+            resultCollection: MutableCollection<Any>?,
+        ): ObjectInfo {
+            // check if object already added to dict
+            val objectDict = objectDicts[node.index]
+            val curId = idReaders[node.index]
+            val curObject: ObjectInfo = objectDict[curId] ?: run {
+                val childrenCollections =
+                    if (node.slotCount == 0) NO_COLLECTIONS else arrayOfNulls(node.slotCount)
+                val curRowData = ObjectInfo(
+                    createObject(resultSet, node.objectPlan, childrenCollections, false)!!,
+                    childrenCollections,
+                    objectDict.size,
+                )
+                objectDict[curId] = curRowData
+
+                // null parent means this object is root -> add to output collection
+                if (parent == null) {
+                    resultCollection?.add(curRowData.value)
+                }
+                curRowData
+            }
+
+            // if curObject is a child and parent haven't add this child yet
+            if (parent != null && edgeSets[node.index].add(edgeOf(parent, curObject))) {
+                parent.childrenCollections[node.slotInParent]!!
+                    .add(node.toManyProperty!!.elementConverter.convert(curObject.value))
+            }
+
+            for (childIndex in node.childIndexes) {
+                if (idReaders[childIndex].read(resultSet)) {
+                    readRelations(resultSet, nodes[childIndex], curObject, null)
+                }
+            }
+            return curObject
         }
-        return if (isNull) null else curLocal.baseClassInfo.objectSupplier.invoke(paramValues)
-    }
 
+        private fun createObject(
+            resultSet: ResultSet,
+            objectPlan: ToManyGraph.ObjectPlan,
+            collections: Array<MutableCollection<Any?>?>,
+            nullIfAllIsNull: Boolean,
+        ): Any? {
+            val curLocal = objectPlan.localMapping
+            val paramValues = arrayOfNulls<Any?>(curLocal.propertiesCount)
+            var isNull = nullIfAllIsNull && curLocal.toManyProperties.isEmpty()
 
-    private class RelationalCollection(
-        val property: ToManyProperty,
-        val collection: MutableCollection<Any?>
-    ) {
-        fun addToCollection(value: Any?) {
-            collection.add(property.elementConverter.convert(value))
+            curLocal.simpleProperties.forEachIndexed { i, simpleProperty ->
+                val value = simpleProperty.extractor.extractValueByIndex(resultSet, objectPlan.simpleColumnIndexes[i])
+                paramValues[simpleProperty.propertyInfo.index] = value
+                isNull = isNull && value == null
+            }
+
+            curLocal.toManyProperties.forEachIndexed { i, toManyProperty ->
+                val collection = toManyProperty.collectionSupplier.invoke()
+                paramValues[toManyProperty.propertyInfo.index] = collection
+                collections[objectPlan.toManySlots[i]] = collection
+            }
+
+            curLocal.nestedProperties.forEachIndexed { i, nestedProperty ->
+                val value = createObject(
+                    resultSet, objectPlan.nestedPlans[i], collections, nestedProperty.nullIfAllIsNull
+                )
+                paramValues[nestedProperty.propertyInfo.index] = value
+                isNull = isNull && value == null
+            }
+            return if (isNull) null else curLocal.baseClassInfo.objectSupplier.invoke(paramValues)
         }
     }
 
+    /**
+     * Pack the [ObjectInfo.serial]s of a parent and a child
+     */
+    private fun edgeOf(parent: ObjectInfo, child: ObjectInfo): Long {
+        return (parent.serial.toLong() shl 32) or (child.serial.toLong() and 0xFFFFFFFFL)
+    }
+
     private class ObjectInfo(
         val value: Any,
-        val childrenCollections: Map<KClass<*>, RelationalCollection>,
-        val parents: MutableMap<IdValue, ObjectInfo> = HashMap(),
-    ) {
-        // will be set outside to reduce look up operation
-        lateinit var idValue: IdValue
-    }
+        /**
+         * Collections of this object's to-many properties, by [ToManyGraph.Node.slotInParent] of the child node
+         */
+        val childrenCollections: Array<MutableCollection<Any?>?>,
+        /**
+         * Position of this object in its node's object dictionary
+         */
+        val serial: Int,
+    )
+
+    private val NO_COLLECTIONS = arrayOfNulls<MutableCollection<Any?>>(0)
 }
\ No newline at end of file
@@ -667,13 +667,50 @@ package com.qualifiedcactus.sqlObjectMapper.queryParsing
 
 internal sealed interface NpParameter {
     class SimpleParameter(
-        val positionList: MutableList<Int>
+        /**
+         * Positions of the parameter's occurrences
+         */
+        val positions: IntArray
     ) : NpParameter
     class ExpandedParameter(
         val length: Int,
         /**
-         * List of ranges of parameter positions, range is inclusive.
+         * Position of the first `?` of each occurrence, an occurrence takes [length] * [tupleSize] positions
+         */
+        val startPositions: IntArray,
+        /**
+         * Whether unused positions are set to the last value instead of null.
+         * True for a dynamic parameter expanded to the length of its bucket.
+         */
+        val padWithLastValue: Boolean = false,
+        /**
+         * Number of positions of each value, greater than 1 for a tuple-expanded parameter (`:name[100](2)`)
+         */
+        val tupleSize: Int = 1,
+        /**
+         * Upper-cased names of the tuple's components (`:name[100](column_1, column_2)`),
+         * used to read them from DTO values. Null if not named.
          */
-        val positionRangeList: MutableList<Pair<Int,Int>>
+        val componentNames: List<String>? = null,
     ) : NpParameter
+
+    /**
+     * A collection bound as a single [java.sql.Array] (`:name[array:type_name]`)
+     */
+    class ArrayParameter(
+        /**
+         * SQL type name of the elements, given to [java.sql.Connection.createArrayOf]
+         */
+        val elementTypeName: String,
+        /**
+         * Positions of the parameter's occurrences
+         */
+        val positions: IntArray,
+    ) : NpParameter
+
+    /**
+     * An expanded parameter of unspecified length (`:name[*]`),
+     * only usable after being expanded by [NpQuery.withDynamicLengths]
+     */
+    object DynamicParameter : NpParameter
 }
\ No newline at end of file
@@ -665,22 +665,75 @@
 
 package com.qualifiedcactus.sqlObjectMapper.queryParsing
 
+import com.qualifiedcactus.sqlObjectMapper.CacheStatistics
+import com.qualifiedcactus.sqlObjectMapper.LruCache
 import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
-import java.io.PushbackReader
-import java.io.StringReader
 import java.lang.Character.*
-import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.ConcurrentHashMap
 
 
+/**
+ * A parsed named-parameter sql string. Immutable, so that it can be shared by all statements of the same sql string.
+ */
 internal class NpQuery(
     val translatedQuery: String,
     val parametersMap: Map<String, NpParameter>,
+    private val npSql: String,
 ) {
     companion object {
+        private const val CACHE_SIZE = 1024
+        private val cache = LruCache<String, NpQuery>(CACHE_SIZE)
+
+        /**
+         * Length of a dynamic parameter (`[*]`) returned when parsing its square brackets
+         */
+        private const val DYNAMIC_LENGTH = -2
 
+        /**
+         * Length of an array parameter (`[array:type_name]`) returned when parsing its square brackets
+         */
+        private const val ARRAY_LENGTH = -3
+        private const val ARRAY_PREFIX = "array:"
+
+        /**
+         * Round [size] up to a power of two, so that a dynamic parameter has few distinct lengths
+         */
+        fun bucketOf(size: Int): Int {
+            return if (size <= 1) 1 else Integer.highestOneBit(size - 1) shl 1
+        }
+
+        /**
+         * Parse [npSql], or reuse the result of a previous parse of the same sql string
+         */
         fun parseNpSql(npSql: String): NpQuery {
-            return NpQueryParser(npSql).parseToNpSql()
+            return cache.getOrPut(npSql) { NpQueryParser(npSql).parseToNpSql() }
         }
+
+        fun cacheStatistics(): CacheStatistics = cache.statistics()
+    }
+
+    /**
+     * Whether this query has a dynamic parameter, in which case [translatedQuery] can't be executed
+     */
+    val hasDynamicParameters: Boolean = parametersMap.values.any { it is NpParameter.DynamicParameter }
+
+    private val bucketQueries = ConcurrentHashMap<Map<String, Int>, NpQuery>()
+
+    /**
+     * Expand each dynamic parameter to the bucket of the size of its value.
+     * The query of each combination of buckets is parsed once and cached.
+     * @param valueSizes sizes of the values of all dynamic parameters, by upper-cased name
+     */
+    fun withDynamicLengths(valueSizes: Map<String, Int>): NpQuery {
+        val lengths = HashMap<String, Int>()
+        parametersMap.forEach { (name, parameter) ->
+            if (parameter is NpParameter.DynamicParameter) {
+                val size = valueSizes[name]
+                    ?: throw SqlObjectMapperException("No value is set for the dynamic parameter ${name}")
+                lengths[name] = bucketOf(size)
+            }
+        }
+        return bucketQueries.computeIfAbsent(lengths) { NpQueryParser(npSql, it).parseToNpSql() }
     }
 
     /**
@@ -688,172 +741,342 @@ internal class NpQuery(
      *
      * A named parameter start with character ":", followed by a java identifier string, which is the name of the parameter.
      * A parameter can optionally end with square braces with a number inside
-     * to mark itself as an expanded parameter to be used with IN clause.
+     * to mark itself as an expanded parameter to be used with IN clause,
+     * or with `[*]` to mark itself as a dynamic parameter, whose length is given by [dynamicLengths],
+     * or with `[array:type_name]` to mark itself as a parameter bound as a single SQL array.
+     * An expanded or dynamic parameter can be followed by the size of a tuple (`[100](2)`)
+     * or the names of its components (`[100](column_1, column_2)`) to expand to a list of tuples.
+     *
+     * String literals (including PostgreSQL dollar-quoted strings), quoted identifiers, comments and `::` casts
+     * are copied as they are. A quote inside a literal is escaped by doubling it:
+     * backslash escapes (MySQL's default) are not recognized.
+     * Spans of sql between parameters are copied in bulk.
      */
     private class NpQueryParser(
-        npSql: String
+        val npSql: String,
+        /**
+         * Lengths of the dynamic parameters, null to leave them unexpanded
+         */
+        val dynamicLengths: Map<String, Int>? = null,
     ) {
-        val translatedQueryBuilder = StringBuilder(npSql.length)
+        val translatedQueryBuilder = StringBuilder(npSql.length + 16)
         var curParamPosition = 0
-        val reader = PushbackReader(StringReader(npSql))
-        val parametersMap = HashMap<String, NpParameter>()
+        val parametersMap = LinkedHashMap<String, ParameterBuilder>()
+
+        /**
+         * Index of the character being read
+         */
+        var index = 0
+
+        /**
+         * Start of the span of [npSql] which is not copied to [translatedQueryBuilder] yet
+         */
+        var copiedUntil = 0
+
+        /**
+         * Element type name of the last parsed `[array:type_name]`
+         */
+        var arrayTypeName: String? = null
+
+        /**
+         * Positions of a parameter, collected until the end of parsing.
+         * [expandedLength] is null for a simple parameter, an array parameter or an unexpanded dynamic parameter.
+         */
+        class ParameterBuilder(val expandedLength: Int?, val dynamic: Boolean, val arrayTypeName: String? = null) {
+            var positions = IntArray(2)
+            var count = 0
+            var tupleSize = 1
+            var componentNames: List<String>? = null
+
+            fun add(position: Int) {
+                if (count == positions.size) {
+                    positions = positions.copyOf(count * 2)
+                }
+                positions[count++] = position
+            }
+
+            fun build(): NpParameter {
+                return if (expandedLength != null) {
+                    NpParameter.ExpandedParameter(
+                        expandedLength, positions.copyOf(count), dynamic, tupleSize, componentNames
+                    )
+                } else if (dynamic) {
+                    NpParameter.DynamicParameter
+                } else if (arrayTypeName != null) {
+                    NpParameter.ArrayParameter(arrayTypeName, positions.copyOf(count))
+                } else {
+                    NpParameter.SimpleParameter(positions.copyOf(count))
+                }
+            }
+        }
 
         fun parseToNpSql(): NpQuery {
             parse()
             return NpQuery(
                 translatedQueryBuilder.toString(),
-                parametersMap
+                parametersMap.mapValues { (_, parameter) -> parameter.build() },
+                npSql,
             )
         }
 
         private fun parse() {
+            val length = npSql.length
+            while (index < length) {
+                when (npSql[index]) {
+                    '\'', '"', '`' -> skipQuoted(npSql[index])
+                    '$' -> skipDollarQuoted()
+                    '-' -> if (charAt(index + 1) == '-') skipLineComment() else index++
+                    '/' -> if (charAt(index + 1) == '*') skipBlockComment() else index++
+                    '?' -> {
+                        curParamPosition++
+                        index++
+                    }
+                    ':' -> if (charAt(index + 1) == ':') index += 2 else parseParam()
+                    else -> index++
+                }
+            }
+            translatedQueryBuilder.append(npSql, copiedUntil, length)
+        }
 
-            while (true) {
-                val curChar = reader.read()
-                if (curChar == -1) break
+        private fun charAt(i: Int): Char? = if (i < npSql.length) npSql[i] else null
 
-                when (curChar) {
-                    '?'.code -> {
-                        parseQuestionMark()
-                    }
-                    ':'.code -> {
-                        parseParam()
-                    }
-                    else -> {
-                        translatedQueryBuilder.appendCodePoint(curChar)
+        /**
+         * Skip a string literal or a quoted identifier, where a doubled quote is an escaped quote
+         */
+        private fun skipQuoted(quote: Char) {
+            index++
+            while (index < npSql.length) {
+                if (npSql[index] == quote) {
+                    if (charAt(index + 1) != quote) {
+                        index++
+                        return
                     }
+                    index++
                 }
+                index++
             }
         }
 
-        private fun parseQuestionMark() {
-            translatedQueryBuilder.append('?')
-            curParamPosition++
+        /**
+         * Skip a dollar-quoted string (`$$...$$` or `$tag$...$tag$`),
+         * or only the `$` if it doesn't start one (e.g. `$1` or an identifier containing `$`)
+         */
+        private fun skipDollarQuoted() {
+            val tagEnd = dollarQuoteTagEnd()
+            if (tagEnd == -1) {
+                index++
+                return
+            }
+            val tag = npSql.substring(index, tagEnd + 1)
+            val end = npSql.indexOf(tag, tagEnd + 1)
+            index = if (end == -1) npSql.length else end + tag.length
+        }
+
+        /**
+         * @return index of the `$` ending the opening tag of a dollar-quoted string starting at [index], or -1
+         */
+        private fun dollarQuoteTagEnd(): Int {
+            if (index > 0 && isJavaIdentifierPart(npSql[index - 1])) {
+                return -1
+            }
+            var i = index + 1
+            val first = charAt(i) ?: return -1
+            if (first != '$') {
+                if (!isJavaIdentifierStart(first)) {
+                    return -1
+                }
+                while (i < npSql.length && npSql[i] != '$' && isJavaIdentifierPart(npSql[i])) {
+                    i++
+                }
+            }
+            return if (charAt(i) == '$') i else -1
+        }
+
+        private fun skipLineComment() {
+            val end = npSql.indexOf('\n', index + 2)
+            index = if (end == -1) npSql.length else end + 1
+        }
+
+        private fun skipBlockComment() {
+            val end = npSql.indexOf("*/", index + 2)
+            index = if (end == -1) npSql.length else end + 2
         }
 
         private fun parseParam() {
+            translatedQueryBuilder.append(npSql, copiedUntil, index)
+            index++
             val paramName = parseParamName().uppercase()
             val expandedParamLength = parseSquareBracketOfParam()
+            val componentNames = if (expandedParamLength != null && charAt(index) == '(') parseTupleOfParam() else null
+            copiedUntil = index
 
             var paramInfo = parametersMap[paramName]
 
             if (paramInfo == null) { // param is not previously specified
-
-                if (expandedParamLength != null) { // param is expanded parameter
-                    if (expandedParamLength == -1) {
-                        throw SqlObjectMapperException("Empty length specified for expanded parameter ${paramName}")
+                if (expandedParamLength == -1) {
+                    throw SqlObjectMapperException("Empty length specified for expanded parameter ${paramName}")
+                }
+                paramInfo = if (expandedParamLength == DYNAMIC_LENGTH) {
+                    ParameterBuilder(dynamicLengths?.getValue(paramName), true)
+                } else if (expandedParamLength == ARRAY_LENGTH) {
+                    ParameterBuilder(null, false, arrayTypeName)
+                } else {
+                    ParameterBuilder(expandedParamLength, false)
+                }
+                if (componentNames != null) {
+                    if (expandedParamLength == ARRAY_LENGTH) {
+                        throw SqlObjectMapperException("Array parameter ${paramName} can't be a tuple")
                     }
-                    val startPosition = curParamPosition + 1
-                    val endPosition = startPosition + expandedParamLength - 1
-
-                    paramInfo = NpParameter.ExpandedParameter(
-                        expandedParamLength,
-                        ArrayList<Pair<Int, Int>>().apply { add(startPosition to endPosition) }
+                    paramInfo.tupleSize = componentNames.first
+                    paramInfo.componentNames = componentNames.second
+                }
+                parametersMap[paramName] = paramInfo
+            } else if (paramInfo.arrayTypeName != null) {
+                if (expandedParamLength != null && expandedParamLength != ARRAY_LENGTH) {
+                    throw SqlObjectMapperException(
+                        "Param ${paramName} is previously specified as an array parameter, " +
+                            "but is specified as expanded parameter on second occurrence"
                     )
-                    curParamPosition = endPosition
-
-                } else { // param is simple parameter
-                    paramInfo = NpParameter.SimpleParameter(
-                        ArrayList<Int>().apply { add(++curParamPosition) }
+                }
+                if (expandedParamLength == ARRAY_LENGTH && !arrayTypeName.equals(paramInfo.arrayTypeName, ignoreCase = true)) {
+                    throw SqlObjectMapperException(
+                        "Param ${paramName} is previously specified as an array of ${paramInfo.arrayTypeName}, " +
+                            "but is specified as an array of ${arrayTypeName} on second occurrence"
                     )
                 }
-                parametersMap[paramName] = paramInfo
+            } else if (expandedParamLength == ARRAY_LENGTH) {
+                throw SqlObjectMapperException(
+                    "Param ${paramName} is not previously specified as an array parameter, " +
+                        "but is specified as array parameter on second occurrence"
+                )
+            } else if (paramInfo.expandedLength == null && !paramInfo.dynamic && expandedParamLength != null) {
+                throw SqlObjectMapperException(
+                    "Param ${paramName} is not previously specified as an expanded parameter, " +
+                        "but is specified as expanded parameter on second occurrence"
+                )
+            }
 
-            } else {
-                when (paramInfo) {
-                    is NpParameter.SimpleParameter -> {
-                        if (expandedParamLength != null) {
-                            throw SqlObjectMapperException(
-                                "Param ${paramName} is not previously specified as an expanded parameter, " +
-                                    "but is specified as expanded parameter on second occurrence"
-                            )
-                        }
-                        paramInfo.positionList.add(++curParamPosition)
-                    }
+            // ignore the length and tuple paths if previously specified
+            val expandedLength = paramInfo.expandedLength
+            if (paramInfo.dynamic && expandedLength == null) { // positions are unknown until expanded
+                translatedQueryBuilder.append("(?)")
+            } else if (expandedLength == null) { // param is simple or array parameter
+                paramInfo.add(++curParamPosition)
+                translatedQueryBuilder.append('?')
+            } else { // param is expanded parameter
+                val tupleSize = paramInfo.tupleSize
+                paramInfo.add(curParamPosition + 1)
+                curParamPosition += expandedLength * tupleSize
 
-                    // ignore the length path if previously specified
-                    is NpParameter.ExpandedParameter -> {
-                        val startPosition = curParamPosition + 1
-                        val endPosition = startPosition + paramInfo.length - 1
-                        paramInfo.positionRangeList.add(startPosition to endPosition)
-                        curParamPosition = endPosition
+                translatedQueryBuilder.append('(')
+                for (i in 0 until expandedLength) {
+                    if (i > 0) {
+                        translatedQueryBuilder.append(',')
                     }
-                }
-            }
-
-            // append '?'
-            when (paramInfo) {
-                is NpParameter.SimpleParameter -> translatedQueryBuilder.append('?')
-                is NpParameter.ExpandedParameter -> {
-                    translatedQueryBuilder.append('(')
-                    for (i in 0 until (paramInfo.length - 1)) {
-                        translatedQueryBuilder.append("?,")
+                    if (tupleSize == 1) {
+                        translatedQueryBuilder.append('?')
+                    } else {
+                        translatedQueryBuilder.append('(')
+                        for (j in 0 until (tupleSize - 1)) {
+                            translatedQueryBuilder.append("?,")
+                        }
+                        translatedQueryBuilder.append("?)")
                     }
-                    translatedQueryBuilder.append("?)")
                 }
+                translatedQueryBuilder.append(')')
             }
         }
 
         private fun parseParamName(): String {
-            val paramNameBuilder = StringBuilder()
-            val firstChar = reader.read()
-            if (firstChar == -1) {
+            if (index >= npSql.length) {
                 throw SqlObjectMapperException("Unexpected end of sql string when parsing parameter name")
             }
+            val firstChar = npSql.codePointAt(index)
             if (!isJavaIdentifierStart(firstChar)) {
                 throw SqlObjectMapperException("Invalid param name starter: ${toChars(firstChar)[0]}")
             }
-            paramNameBuilder.appendCodePoint(firstChar)
+            val start = index
+            index += charCount(firstChar)
+            while (index < npSql.length) {
+                val curChar = npSql.codePointAt(index)
+                if (!isJavaIdentifierPart(curChar)) {
+                    break
+                }
+                index += charCount(curChar)
+            }
+            return npSql.substring(start, index)
+        }
 
-            while (true) {
-                val curChar = reader.read()
-                when {
-                    curChar == -1 -> {
-                        break
-                    }
-                    isJavaIdentifierPart(curChar) -> {
-                        paramNameBuilder.appendCodePoint(curChar)
-                    }
-                    else -> {
-                        reader.unread(curChar)
-                        break
-                    }
+        /**
+         * Parse the parentheses after the square brackets of a parameter:
+         * either the size of a tuple or the names of its components.
+         * Parentheses holding anything else are sql following the parameter, and are left unread.
+         * @return the size of the tuple and the upper-cased names of its components (null if not named),
+         * or null if the parentheses are not a tuple
+         * @throws SqlObjectMapperException when the size of the tuple is 0 or negative
+         */
+        private fun parseTupleOfParam(): Pair<Int, List<String>?>? {
+            val end = npSql.indexOf(')', index + 1)
+            if (end == -1) {
+                return null
+            }
+            val tupleString = npSql.substring(index + 1, end).trim()
+
+            val tupleSize = tupleString.toIntOrNull()
+            if (tupleSize != null) {
+                if (tupleSize < 1) {
+                    throw SqlObjectMapperException("The size of tuple is 0 or negative (${tupleSize})")
                 }
+                index = end + 1
+                return Pair(tupleSize, null)
             }
-            return paramNameBuilder.toString()
+            val names = tupleString.split(',').map { it.trim() }
+            if (!names.all { isIdentifier(it) }) {
+                return null
+            }
+            index = end + 1
+            return Pair(names.size, names.map { it.uppercase() })
+        }
+
+        private fun isIdentifier(name: String): Boolean {
+            if (name.isEmpty() || !isJavaIdentifierStart(name.codePointAt(0))) {
+                return false
+            }
+            return name.codePoints().allMatch { isJavaIdentifierPart(it) }
         }
 
         /**
-         * Return null when startChar is not a left square bracket (will unread).
-         * If the string inside is empty, return -1.
+         * Return null when there is no left square bracket after the parameter name.
+         * If the string inside is empty, return -1. If it is `*`, return [DYNAMIC_LENGTH].
+         * If it is `array:type_name`, set [arrayTypeName] and return [ARRAY_LENGTH].
          * @throws SqlObjectMapperException when end of input while parsing number or number is 0 or negative
          * @throws NumberFormatException when number string is invalid
          */
         private fun parseSquareBracketOfParam(): Int? {
-            val startChar = reader.read()
-
-            if (startChar == -1) {
-                return null
-            } else if (startChar != '['.code) {
-                reader.unread(startChar)
+            if (charAt(index) != '[') {
                 return null
             }
-
-            val numberStringBuilder = StringBuilder()
-            while (true) {
-                val curChar = reader.read()
-                if (curChar == -1) {
-                    throw SqlObjectMapperException("Dangling '[' when parsing named-parameter sql")
-                } else if (curChar == ']'.code) {
-                    break
-                } else {
-                    numberStringBuilder.appendCodePoint(curChar)
-                }
+            val end = npSql.indexOf(']', index + 1)
+            if (end == -1) {
+                throw SqlObjectMapperException("Dangling '[' when parsing named-parameter sql")
             }
-            if (numberStringBuilder.isEmpty()) {
+            val numberString = npSql.substring(index + 1, end)
+            index = end + 1
+            if (numberString.isEmpty()) {
                 return -1
             }
-            val parsedNumber = numberStringBuilder.toString().toInt()
+            if (numberString == "*") {
+                return DYNAMIC_LENGTH
+            }
+            if (numberString.startsWith(ARRAY_PREFIX, ignoreCase = true)) {
+                val typeName = numberString.substring(ARRAY_PREFIX.length).trim()
+                if (typeName.isEmpty()) {
+                    throw SqlObjectMapperException("Empty element type name specified for array parameter")
+                }
+                arrayTypeName = typeName
+                return ARRAY_LENGTH
+            }
+            val parsedNumber = numberString.toInt()
             if (parsedNumber < 1) {
                 throw SqlObjectMapperException("The length of expanded parameter is 0 or negative (${parsedNumber})")
             }
@@ -665,9 +665,16 @@
 
 package com.qualifiedcactus.sqlObjectMapper.toParam
 
+import com.qualifiedcactus.sqlObjectMapper.JavaKType
 import com.qualifiedcactus.sqlObjectMapper.MappingProvider
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.CamelCaseToUpperSnakeCaseConverter
+import com.qualifiedcactus.sqlObjectMapper.isKotlinClass
+import java.lang.invoke.MethodHandles
+import java.lang.invoke.MethodType
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
 import kotlin.reflect.KClass
+import kotlin.reflect.KType
 import kotlin.reflect.KVisibility
 import kotlin.reflect.full.memberProperties
 import kotlin.reflect.jvm.javaField
@@ -676,50 +683,79 @@ internal class DefaultParamClassMapping(val clazz: KClass<*>) : ParamClassMappin
 
     override val parametersNameMap = HashMap<String, ParamClassMapping.Parameter>()
     init {
+        if (clazz.java.isKotlinClass()) {
+            mapKotlinProperties()
+        } else {
+            mapJavaFields()
+        }
+    }
+
+    private fun mapKotlinProperties() {
         clazz.memberProperties.forEach { property ->
             if (property.visibility != KVisibility.PUBLIC) {
                 return@forEach
             }
             val field = property.javaField
             if (field != null) {
-                val ignoreParam = field.getAnnotation(IgnoreParam::class.java)
-                if (ignoreParam != null) {
-                    return@forEach
-                }
-                val sqlParam = field.getAnnotation(SqlParam::class.java)
-                val nestedParams = field.getAnnotation(NestedParams::class.java)
+                addParameter(property.name, property.returnType, field) { o -> property.getter.call(o) }
+            }
+        }
+    }
 
-                if (sqlParam != null) {
-                    val name = if (sqlParam.name == "") {
-                        CamelCaseToUpperSnakeCaseConverter.convert(property.name)
-                    } else {
-                        sqlParam.name.uppercase()
-                    }
+    /**
+     * Java classes are read with java.lang.reflect only: their properties are their public fields
+     */
+    private fun mapJavaFields() {
+        clazz.java.fields.forEach { field ->
+            if (Modifier.isStatic(field.modifiers)) {
+                return@forEach
+            }
+            val getterHandle = lookup.unreflectGetter(field)
+                .asType(MethodType.methodType(Any::class.java, Any::class.java))
+            addParameter(field.name, JavaKType(field.genericType), field) { o -> getterHandle.invokeExact(o) }
+        }
+    }
+
+    private fun addParameter(propertyName: String, propertyType: KType, field: Field, getter: (o: Any) -> Any?) {
+        val ignoreParam = field.getAnnotation(IgnoreParam::class.java)
+        if (ignoreParam != null) {
+            return
+        }
+        val sqlParam = field.getAnnotation(SqlParam::class.java)
+        val nestedParams = field.getAnnotation(NestedParams::class.java)
+
+        if (sqlParam != null) {
+            val name = if (sqlParam.name == "") {
+                CamelCaseToUpperSnakeCaseConverter.convert(propertyName)
+            } else {
+                sqlParam.name.uppercase()
+            }
 
-                    parametersNameMap[name] = ParamClassMapping.Parameter(
-                        {o -> property.getter.call(o)},
-                        ParamValueSetter.createInstance(sqlParam.paramSetter, property.returnType, field.annotations)
-                    )
-                }
-                else if (nestedParams != null) {
-                    val nested = MappingProvider.mapParamClass(property.returnType.classifier as KClass<*>)
-                    nested.parametersNameMap.forEach { (paramName, parameterInfo)->
-                        parametersNameMap[paramName] = ParamClassMapping.Parameter(
-                            {o -> parameterInfo.getter(property.getter.call(o)!!) },
-                            parameterInfo.extractor
-                        )
-                    }
-                }
-                else {
-                    parametersNameMap[
-                        CamelCaseToUpperSnakeCaseConverter.convert(property.name)
-                    ] = ParamClassMapping.Parameter(
-                        {o -> property.getter.call(o)},
-                        ParamValueSetter(property.returnType, field.annotations)
-                    )
-                }
+            parametersNameMap[name] = ParamClassMapping.Parameter(
+                getter,
+                ParamValueSetter.createInstance(sqlParam.paramSetter, propertyType, field.annotations)
+            )
+        }
+        else if (nestedParams != null) {
+            val nested = MappingProvider.mapParamClass(propertyType.classifier as KClass<*>)
+            nested.parametersNameMap.forEach { (paramName, parameterInfo)->
+                parametersNameMap[paramName] = ParamClassMapping.Parameter(
+                    {o -> parameterInfo.getter(getter(o)!!) },
+                    parameterInfo.extractor
+                )
             }
         }
+        else {
+            parametersNameMap[
+                CamelCaseToUpperSnakeCaseConverter.convert(propertyName)
+            ] = ParamClassMapping.Parameter(
+                getter,
+                ParamValueSetter(propertyType, field.annotations)
+            )
+        }
     }
 
-}
\ No newline at end of file
+    private companion object {
+        val lookup: MethodHandles.Lookup = MethodHandles.lookup()
+    }
+}
@@ -668,6 +668,7 @@
 package com.qualifiedcactus.sqlObjectMapper.toParam
 
 import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
+import com.qualifiedcactus.sqlObjectMapper.newInstanceOf
 import java.math.BigDecimal
 import java.nio.ByteBuffer
 import java.sql.PreparedStatement
@@ -698,11 +699,7 @@ open class ParamValueSetter(
             kType: KType,
             annotations: Array<out Annotation>,
         ): ParamValueSetter {
-            return kClass.constructors.find {
-                it.parameters.size == 2 &&
-                    it.parameters[0].type.classifier == KType::class &&
-                    it.parameters[1].type.classifier == Array<out Annotation>::class
-            }?.call(kType, annotations)
+            return kClass.java.newInstanceOf(kType, annotations)
                 ?: throw SqlObjectMapperException(
                     "${kClass} doesn't have constructor of type (KType, KAnnotatedElement)"
                 )
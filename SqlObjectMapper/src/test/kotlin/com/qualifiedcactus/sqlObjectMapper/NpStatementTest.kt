@@ -666,13 +666,25 @@
 package com.qualifiedcactus.sqlObjectMapper
 
 import com.qualifiedcactus.sqlObjectMapper.NpStatement.Companion.prepareStmt
+import com.qualifiedcactus.sqlObjectMapper.fromRs.RsColumn
+import com.qualifiedcactus.sqlObjectMapper.fromRs.RsToMany
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.MResultSet
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.ScalarResultSet
 import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.Assertions.*
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.TestInstance
 import org.junit.jupiter.api.TestInstance.Lifecycle
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedMapperSupport
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedParamBinder
+import com.qualifiedcactus.sqlObjectMapper.generated.GeneratedRowMapper
+import io.mockk.mockkObject
+import io.mockk.unmockkObject
+import io.mockk.verify
 import java.sql.Connection
+import java.sql.ResultSet
+import java.util.concurrent.Executors
 
 
 @[TestInstance(Lifecycle.PER_CLASS)]
@@ -775,4 +787,311 @@ internal class NpStatementTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testDynamicExpandedParameters() {
+        val sql = "select column_1 from table_1 where column_1 in :param_1[*] order by column_1"
+        val list1 = NpSqlStringBuilder(connection, sql)
+            .withValue("param_1", listOf(1, 2, 5))
+            .toNpStatement().use { stmt ->
+                stmt.executeThen().processScalarResult(Long::class).toList()
+            }
+        assertEquals(listOf(1L, 2L), list1)
+
+        val list2 = NpSqlStringBuilder(connection, sql)
+            .withDto(ParamDto2(listOf(3, 4)))
+            .toNpStatement().use { stmt ->
+                stmt.executeThen().processScalarResult(Long::class).toList()
+            }
+        assertEquals(listOf(3L, 4L), list2)
+
+        assertThrows(SqlObjectMapperException::class.java) {
+            connection.prepareStmt(sql)
+        }
+    }
+
+    @Test
+    fun testArrayParameters() {
+        val sql = "select column_1 from table_1 where column_1 in (unnest(:param_1[array:bigint])) order by column_1"
+        val list1 = connection.prepareStmt(sql).use { stmt ->
+            stmt.setParameter("param_1", listOf(2, 4))
+                .setParameter("param_1", listOf(1, 3, 5))
+                .executeThen()
+                .processScalarResult(Long::class).toList()
+        }
+        assertEquals(listOf(1L, 3L), list1)
+
+        val list2 = connection.prepareStmt(sql).use { stmt ->
+            stmt.setParametersByDto(ParamDto2((1L..100L).toList()))
+                .executeThen()
+                .processScalarResult(Long::class).toList()
+        }
+        assertEquals(listOf(1L, 2L, 3L, 4L), list2)
+    }
+
+    class KeyDto(
+        val column1: Long,
+        val column2: Long,
+    )
+    @Test
+    fun testTupleExpandedParameters() {
+        val sql = "select column_1 from table_1 where (column_1, column_2) in :keys[3](2) order by column_1"
+        val list1 = connection.prepareStmt(sql).use { stmt ->
+            stmt.setParameter("keys", listOf(Pair(1, 2), Pair(2, 4), Pair(3, 4)))
+                .executeThen()
+                .processScalarResult(Long::class).toList()
+        }
+        assertEquals(listOf(1L, 3L), list1)
+
+        val namedSql = "select column_1 from table_1 where (column_2, column_1) in :keys[*](column_2, column_1) order by column_1"
+        val list2 = NpSqlStringBuilder(connection, namedSql)
+            .withValue("keys", listOf(KeyDto(2, 4), KeyDto(4, 5), KeyDto(1, 2)))
+            .toNpStatement().use { stmt ->
+                stmt.executeThen().processScalarResult(Long::class).toList()
+            }
+        assertEquals(listOf(1L, 4L), list2)
+
+        assertThrows(SqlObjectMapperException::class.java) {
+            connection.prepareStmt(sql).use { stmt -> stmt.setParameter("keys", listOf(listOf(1, 2, 3))) }
+        }
+    }
+
+    data class RowDto(
+        val column1: Long,
+        val column2: Long,
+    )
+    @Test
+    fun testRowPlanReusedAcrossExecutions() {
+        val sql1 = "select column_1, column_2 from table_1 where column_1 = :param_1"
+        val sql2 = "select column_2, column_1 from table_1 where column_1 = :param_1"
+        for (i in 1L..3L) {
+            listOf(sql1, sql2).forEach { sql ->
+                val dto = connection.prepareStmt(sql).use { stmt ->
+                    stmt.setParameter("param_1", i)
+                        .executeThen()
+                        .processDtoResult(RowDto::class).firstOnly()!!
+                }
+                assertEquals(RowDto(i, i + 1), dto)
+            }
+        }
+        connection.prepareStmt(sql1).use { stmt ->
+            val rs = stmt.setParameter("param_1", 1).executeQuery()
+            val mapping = MappingProvider.mapRsClass(RowDto::class)
+            assertSame(
+                MappingProvider.planRsRow(sql1, mapping, rs.metaData),
+                MappingProvider.planRsRow(sql1, mapping, rs.metaData),
+            )
+        }
+    }
+
+    data class GeneratedDto(
+        val column1: Long,
+        val column2: Long?,
+    )
+
+    /**
+     * Same as what sqlObjectMapper-processor generates for [GeneratedDto]
+     */
+    class GeneratedDtoRowMapper : GeneratedRowMapper<GeneratedDto> {
+        override val dtoClass = GeneratedDto::class.java
+        override val columnLabels = arrayOf("COLUMN_1", "COLUMN_2")
+        override fun mapRow(rs: ResultSet, columnIndexes: IntArray): GeneratedDto {
+            return GeneratedDto(
+                GeneratedMapperSupport.getLongNotNull(rs, columnIndexes[0]),
+                GeneratedMapperSupport.getLong(rs, columnIndexes[1]),
+            )
+        }
+    }
+
+    class GeneratedDtoParamBinder : GeneratedParamBinder<GeneratedDto> {
+        override val dtoClass = GeneratedDto::class.java
+        override val parameterNames = arrayOf("COLUMN_1")
+        override fun getValue(dto: GeneratedDto, parameterIndex: Int): Any? = dto.column1
+    }
+
+    data class GeneratedListDto(
+        val param1: List<Long>,
+    )
+
+    class GeneratedListDtoParamBinder : GeneratedParamBinder<GeneratedListDto> {
+        override val dtoClass = GeneratedListDto::class.java
+        override val parameterNames = arrayOf("PARAM_1")
+        override fun getValue(dto: GeneratedListDto, parameterIndex: Int): Any? = dto.param1
+    }
+
+    @Test
+    fun testGeneratedMappers() {
+        assertTrue(MappingProvider.findGeneratedRowMapper(GeneratedDto::class.java) is GeneratedDtoRowMapper)
+        assertTrue(MappingProvider.findGeneratedParamBinder(GeneratedDto::class.java) is GeneratedDtoParamBinder)
+
+        val sql = "select column_2, column_1 from table_1 where column_1 = :column_1"
+        val dto = connection.prepareStmt(sql).use { stmt ->
+            stmt.setParametersByDto(GeneratedDto(2, null))
+                .executeThen()
+                .processDtoResult(GeneratedDto::class).firstOnly()
+        }
+        assertEquals(GeneratedDto(2, 3), dto)
+
+        val list = connection.prepareStmt("select * from table_1 order by column_1").use { stmt ->
+            val result = stmt.executeThen().processDtoResult(GeneratedDto::class)
+            assertTrue(result is MResultSet)
+            result.toList()
+        }
+        assertEquals((1L..4L).map { GeneratedDto(it, it + 1) }, list)
+
+        mockkObject(MappingProvider)
+        try {
+            connection.prepareStmt("select * from table_1").use { stmt ->
+                stmt.executeThen().processDtoRows(GeneratedDto::class).toList()
+            }
+            verify(exactly = 0) { MappingProvider.mapRsClass(GeneratedDto::class) }
+
+            val expanded = NpSqlStringBuilder(connection, "select column_1 from table_1 where column_1 in :param_1[*] order by column_1")
+                .withDto(GeneratedListDto(listOf(3, 4)))
+                .toNpStatement().use { stmt ->
+                    stmt.executeThen().processScalarResult(Long::class).toList()
+                }
+            assertEquals(listOf(3L, 4L), expanded)
+            verify(exactly = 0) { MappingProvider.mapParamClass(GeneratedListDto::class) }
+        } finally {
+            unmockkObject(MappingProvider)
+        }
+
+        assertThrowsExactly(MissingColumnException::class.java) {
+            connection.prepareStmt("select column_1 from table_1").use { stmt ->
+                stmt.executeThen().processDtoResult(GeneratedDto::class).toList()
+            }
+        }
+        assertThrowsExactly(MissingColumnException::class.java) {
+            connection.prepareStmt("select column_1, column_2 as \"column_2\" from table_1").use { stmt ->
+                stmt.executeThen().processDtoResult(GeneratedDto::class).toList()
+            }
+        }
+    }
+
+    @Test
+    fun testPrimitiveScalarResult() {
+        val sql = "select column_1 from table_1 order by column_1"
+        fun <R> query(operation: (ScalarResultSet<Long>) -> R): R {
+            return connection.prepareStmt(sql).use { stmt ->
+                operation(stmt.executeThen().processScalarColumn(Long::class))
+            }
+        }
+
+        assertArrayEquals(longArrayOf(1, 2, 3, 4), query { it.toLongArray() })
+        assertArrayEquals(intArrayOf(1, 2, 3, 4), query { it.toIntArray() })
+        assertArrayEquals(doubleArrayOf(1.0, 2.0, 3.0, 4.0), query { it.toDoubleArray() })
+        query { it.toLongSet() }.let { set ->
+            assertEquals(4, set.size)
+            assertTrue(1L in set && 4L in set)
+            assertFalse(5L in set)
+        }
+        assertEquals(10L, query { result -> result.toLongStream().use { it.sum() } })
+        assertEquals(4L, query { result -> result.toIntStream().use { it.count() } })
+
+        assertThrowsExactly(SqlObjectMapperException::class.java) {
+            connection.prepareStmt("select cast(null as bigint) from table_1").use { stmt ->
+                stmt.executeThen().processScalarColumn(Long::class).toLongArray()
+            }
+        }
+    }
+
+    @Test
+    fun testColumnarResult() {
+        val sql = """
+            select column_1, cast(column_2 as double) as column_2,
+                case when column_3 > 4 then 'big' end as column_3
+            from table_1 order by column_1
+        """.trimIndent()
+        val result = connection.prepareStmt(sql).use { stmt ->
+            stmt.executeThen().processColumnarResult()
+        }
+        assertEquals(4, result.rowCount)
+        assertArrayEquals(longArrayOf(1, 2, 3, 4), result.longColumn("column_1").values)
+        assertArrayEquals(doubleArrayOf(2.0, 3.0, 4.0, 5.0), result.doubleColumn("column_2").values)
+        assertArrayEquals(arrayOf(null, null, "big", "big"), result.objectColumn("column_3").values)
+        assertTrue(result.row(0).isNull("column_3"))
+        assertEquals(4L, result.row(3).getLong("column_1"))
+
+        val dtoResult = connection.prepareStmt("select * from table_1 order by column_1").use { stmt ->
+            stmt.executeThen().processColumnarResult(RowDto::class)
+        }
+        assertEquals(listOf("COLUMN_1", "COLUMN_2"), dtoResult.columns.map { it.label })
+        assertArrayEquals(longArrayOf(2, 3, 4, 5), dtoResult.longColumn("column_2").values)
+
+        val duplicateResult = connection.prepareStmt("select column_1 as c, column_2 as c from table_1 order by column_1").use { stmt ->
+            stmt.executeThen().processColumnarResult()
+        }
+        assertEquals(2, duplicateResult.columns.size)
+        assertArrayEquals(longArrayOf(1, 2, 3, 4), duplicateResult.longColumn("c").values)
+    }
+
+    data class SplitRoot(
+        @RsColumn(isId = true)
+        val column1: Long,
+        @RsToMany
+        val childrenA: List<SplitChildA>,
+        @RsToMany
+        val childrenB: Set<SplitChildB>,
+    )
+    data class SplitChildA(
+        @RsColumn(isId = true)
+        val aId: Long,
+    )
+    data class SplitChildB(
+        @RsColumn(isId = true)
+        val bId: Long,
+    )
+
+    @Test
+    fun testSplitQuery() {
+        val childASql = "select column_1 as parent, column_2 as a_id from table_1 where column_1 in :parent_ids[3]"
+        val childBSql = """
+            select column_1 as parent, column_3 as b_id from table_1 where column_1 in :parent_ids[3]
+            union all
+            select column_1 as parent, column_4 as b_id from table_1 where column_1 in :parent_ids[3]
+        """.trimIndent()
+        val expected = (1L..4L).map { i ->
+            SplitRoot(i, listOf(SplitChildA(i + 1)), setOf(SplitChildB(i + 2), SplitChildB(i + 3)))
+        }
+
+        val list = connection.prepareStmt("select column_1 from table_1 order by column_1").use { stmt ->
+            stmt.executeThen()
+                .processSplitQuery(SplitRoot::class)
+                .toMany("childrenA", childASql, "parent")
+                .toMany("childrenB", childBSql, "parent")
+                .toList()
+        }
+        assertEquals(expected, list)
+
+        val url = connection.metaData.url
+        val dataSource = org.hsqldb.jdbc.JDBCDataSource().apply {
+            setDatabase(url)
+            setUser("SA")
+            setPassword("")
+        }
+        val executor = Executors.newFixedThreadPool(2)
+        try {
+            val concurrentList = connection.prepareStmt("select column_1 from table_1 order by column_1").use { stmt ->
+                stmt.executeThen()
+                    .processSplitQuery(SplitRoot::class)
+                    .toMany("childrenA", childASql, "parent")
+                    .toMany("childrenB", childBSql, "parent")
+                    .toList(dataSource, executor)
+            }
+            assertEquals(expected, concurrentList)
+        } finally {
+            executor.shutdown()
+        }
+
+        connection.prepareStmt("select column_1 from table_1").use { stmt ->
+            val loader = stmt.executeThen()
+                .processSplitQuery(SplitRoot::class)
+                .toMany("childrenA", childASql, "parent")
+            assertThrows(SqlObjectMapperException::class.java) {
+                loader.toMany("childrenA", childASql, "parent")
+            }
+            loader.close()
+        }
+    }
+}
@@ -665,6 +665,7 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.mapping
 
+import com.qualifiedcactus.sqlObjectMapper.JavaKType
 import com.qualifiedcactus.sqlObjectMapper.fromRs.RsIgnore
 import org.junit.jupiter.api.Assertions.*
 import org.junit.jupiter.api.Test
@@ -706,6 +707,69 @@ internal class BaseClassInfoTest {
     }
 
 
+    class MyDto3 {
+        var property1: String = ""
+            private set
+    }
+
+    @[Test]
+    fun testBeanWithPrivateSetter() {
+        val baseClassInfo = BaseClassInfo.fromKClass(MyDto3::class)
+        assertEquals(listOf("property1"), baseClassInfo.propertyInfoList.map { it.name })
+        val dto = baseClassInfo.objectSupplier(arrayOf("foo")) as MyDto3
+        assertEquals("foo", dto.property1)
+    }
+
+    @[Test]
+    fun testConstructorObjectSupplier() {
+        val baseClassInfo = BaseClassInfo.fromKClass(MyDto1::class)
+        val uuid = UUID.randomUUID()
+        val dto = baseClassInfo.objectSupplier(arrayOf("foo", uuid, BigDecimal.ONE))
+        assertEquals(MyDto1("foo", uuid, BigDecimal.ONE), dto)
+    }
+
+    @[Test]
+    fun testBeanObjectSupplier() {
+        val baseClassInfo = BaseClassInfo.fromKClass(MyDto2::class)
+        val uuid = UUID.randomUUID()
+        val values = arrayOfNulls<Any?>(3)
+        baseClassInfo.propertyInfoList.forEach { propertyInfo ->
+            values[propertyInfo.index] = when (propertyInfo.name) {
+                "property1" -> "foo"
+                "property2" -> uuid
+                else -> BigDecimal.ONE
+            }
+        }
+        val dto = baseClassInfo.objectSupplier(values) as MyDto2
+        assertEquals("foo", dto.property1)
+        assertEquals(uuid, dto.property2)
+        assertEquals(BigDecimal.ONE, dto.property3)
+    }
+
+    @[Test]
+    fun testJavaBeanClass() {
+        val baseClassInfo = BaseClassInfo.fromKClass(JavaBeanDto::class)
+        assertEquals(
+            setOf("property1", "property2", "property3"),
+            baseClassInfo.propertyInfoList.map { it.name }.toSet()
+        )
+        val uuid = UUID.randomUUID()
+        val values = arrayOfNulls<Any?>(3)
+        baseClassInfo.propertyInfoList.forEach { propertyInfo ->
+            assertInstanceOf(JavaKType::class.java, propertyInfo.type)
+            values[propertyInfo.index] = when (propertyInfo.name) {
+                "property1" -> "foo"
+                "property2" -> uuid
+                else -> BigDecimal.ONE
+            }
+            assertEquals(values[propertyInfo.index]!!::class, propertyInfo.type.classifier)
+        }
+        val dto = baseClassInfo.objectSupplier(values) as JavaBeanDto
+        assertEquals("foo", dto.property1)
+        assertEquals(uuid, dto.property2)
+        assertEquals(BigDecimal.ONE, dto.property3)
+    }
+
     private fun testPropertyInfoList(baseClassInfo: BaseClassInfo, checkIndex: Boolean = true) {
         assertEquals(3, baseClassInfo.propertyInfoList.size)
         baseClassInfo.propertyInfoList[0].apply {
@@ -665,11 +665,17 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.strategies
 
+import com.qualifiedcactus.sqlObjectMapper.NpStatement.Companion.prepareStmt
+import com.qualifiedcactus.sqlObjectMapper.MissingColumnException
+import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
 import com.qualifiedcactus.sqlObjectMapper.createDatabaseConnection
+import com.qualifiedcactus.sqlObjectMapper.fromRs.RsCompiled
 import com.qualifiedcactus.sqlObjectMapper.fromRs.RsNested
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.BaseClassInfo
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsLocalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RowPlan
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.MResultSet
 import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.Test
 
@@ -782,4 +788,121 @@ internal class ParseRsForNoRelationTest {
             }
         }
     }
+
+    @Test
+    fun testMissingColumn() {
+        val mapping = RsTotalClassMapping.fromLocalMapping(
+            RsLocalClassMapping.fromBaseClassInfo(
+                BaseClassInfo.fromKClass(WithOutNested::class)
+            )
+        )
+
+        val sql = "select column_1, column_2 from table_1 where column_1 < 0"
+        connection.createStatement().use { stmt ->
+            val rs = stmt.executeQuery(sql)
+            val exception = assertThrowsExactly(MissingColumnException::class.java) {
+                ParseRsForNoRelation.createRsStreamNoRelation(rs, mapping)
+            }
+            assertTrue(exception.message!!.contains("COLUMN_3"))
+        }
+    }
+
+    @RsCompiled
+    data class Compiled(
+        val column1: Long,
+        val column2: String?,
+        @RsNested(nullIfAllIsNull = false)
+        val nested: Nested,
+    ) {
+        data class Nested(
+            val column3: String?,
+        )
+    }
+
+    @RsCompiled
+    data class NotCompilable(
+        val column1: Long,
+        @RsNested
+        val nested: Compiled.Nested?,
+    )
+
+    @Test
+    fun testCompiledDto() {
+        val mapping = RsTotalClassMapping.fromLocalMapping(
+            RsLocalClassMapping.fromBaseClassInfo(
+                BaseClassInfo.fromKClass(Compiled::class)
+            )
+        )
+
+        val sql = "select * from table_1 order by column_1 asc"
+        connection.createStatement().use { stmt ->
+            val rs = stmt.executeQuery(sql)
+            assertNotNull(RowPlan.fromMetaData(rs.metaData, mapping).compiledMapper)
+            val dtoList = ParseRsForNoRelation.createRsStreamNoRelation(rs, mapping)
+                .use {stream -> stream.toList() as List<Compiled>}
+
+            assertEquals(
+                listOf(
+                    Compiled(1, "foo", Compiled.Nested("bar")),
+                    Compiled(2, null, Compiled.Nested(null)),
+                ),
+                dtoList
+            )
+        }
+
+        val fallbackMapping = RsTotalClassMapping.fromLocalMapping(
+            RsLocalClassMapping.fromBaseClassInfo(
+                BaseClassInfo.fromKClass(NotCompilable::class)
+            )
+        )
+        connection.createStatement().use { stmt ->
+            val rs = stmt.executeQuery(sql)
+            assertNull(RowPlan.fromMetaData(rs.metaData, fallbackMapping).compiledMapper)
+            val dtoList = ParseRsForNoRelation.createRsStreamNoRelation(rs, fallbackMapping)
+                .use {stream -> stream.toList() as List<NotCompilable>}
+            assertEquals(NotCompilable(1, Compiled.Nested("bar")), dtoList[0])
+            assertEquals(NotCompilable(2, null), dtoList[1])
+        }
+    }
+
+    class FlyweightBean {
+        var column1: Long = 0
+        @RsNested
+        var nested: Nested? = null
+
+        class Nested {
+            var column2: String? = null
+            var column3: String? = null
+        }
+    }
+
+    @Test
+    fun testFlyweightRows() {
+        val sql = "select * from table_1 order by column_1 asc"
+        val rows = ArrayList<FlyweightBean>()
+        val values = ArrayList<List<Any?>>()
+        connection.createStatement().use { stmt ->
+            MResultSet(stmt.executeQuery(sql), FlyweightBean::class).forEachRow { row ->
+                rows.add(row)
+                values.add(listOf(row.column1, row.nested?.column2, row.nested?.column3))
+            }
+        }
+        assertEquals(listOf(listOf(1L, "foo", "bar"), listOf(2L, null, null)), values)
+        assertSame(rows[0], rows[1])
+
+        val column1Values = ArrayList<Long>()
+        connection.prepareStmt("select * from table_1 where column_1 > :min order by column_1").use { stmt ->
+            stmt.setParameter("min", 0)
+                .executeThen()
+                .processDtoRows(FlyweightBean::class)
+                .forEachRow { row -> column1Values.add(row.column1) }
+        }
+        assertEquals(listOf(1L, 2L), column1Values)
+
+        connection.createStatement().use { stmt ->
+            assertThrowsExactly(SqlObjectMapperException::class.java) {
+                MResultSet(stmt.executeQuery(sql), WithOutNested::class).forEachRow { }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -665,12 +665,14 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.strategies
 
+import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
 import com.qualifiedcactus.sqlObjectMapper.createDatabaseConnection
 import com.qualifiedcactus.sqlObjectMapper.fromRs.RsColumn
 import com.qualifiedcactus.sqlObjectMapper.fromRs.RsRecursive
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.BaseClassInfo
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsLocalClassMapping
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.MResultSet
 import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.Test
 
@@ -765,4 +767,51 @@ internal class ParseRsForRecursiveRelationTest {
             }
         }
     }
+
+    @Test
+    fun testChildrenBeforeParents() {
+        val mapping = RsTotalClassMapping.fromLocalMapping(
+            RsLocalClassMapping.fromBaseClassInfo(
+                BaseClassInfo.fromKClass(RecursiveDto::class)
+            )
+        )
+
+        connection.createStatement().use { stmt ->
+            val rs = stmt.executeQuery("select * from table_1 order by id desc")
+            val dtoList: List<RecursiveDto> = ArrayList()
+            ParseRsForRecursiveRelation.parseRsRecursiveRelation(rs, mapping, dtoList as MutableCollection<Any>)
+
+            assertEquals(listOf(2, 1), dtoList.map { it.id })
+            assertEquals(listOf(4, 3), dtoList[1].children.map { it.id })
+            assertEquals(listOf(5), dtoList[1].children[1].children.map { it.id })
+        }
+
+        connection.createStatement().use { stmt ->
+            val rs = stmt.executeQuery("select * from table_1 where id <> 3")
+            val exception = assertThrowsExactly(SqlObjectMapperException::class.java) {
+                ParseRsForRecursiveRelation.parseRsRecursiveRelation(rs, mapping, ArrayList())
+            }
+            assertTrue(exception.message!!.contains("[3]"))
+        }
+    }
+
+    @Test
+    fun testRecursiveStream() {
+        // depth-first order: 1, 3, 5, 4, 2
+        val sql = "select * from table_1 order by case id when 3 then 2 when 5 then 3 when 4 then 4 when 2 then 5 else 1 end"
+
+        connection.createStatement().use { stmt ->
+            val roots = MResultSet(stmt.executeQuery(sql), RecursiveDto::class).toStream().use { it.toList() }
+            assertEquals(listOf(1, 2), roots.map { it.id })
+            assertEquals(listOf(3, 4), roots[0].children.map { it.id })
+            assertEquals(listOf(5), roots[0].children[0].children.map { it.id })
+            assertEquals(0, roots[1].children.size)
+        }
+
+        connection.createStatement().use { stmt ->
+            val first = MResultSet(stmt.executeQuery(sql), RecursiveDto::class).firstOnly()!!
+            assertEquals(1, first.id)
+            assertEquals(2, first.children.size)
+        }
+    }
 }
\ No newline at end of file
@@ -665,6 +665,7 @@
 
 package com.qualifiedcactus.sqlObjectMapper.fromRs.strategies
 
+import com.qualifiedcactus.sqlObjectMapper.MissingColumnException
 import com.qualifiedcactus.sqlObjectMapper.createDatabaseConnection
 import com.qualifiedcactus.sqlObjectMapper.fromRs.RsColumn
 import com.qualifiedcactus.sqlObjectMapper.fromRs.RsElementConverter
@@ -672,6 +673,7 @@ import com.qualifiedcactus.sqlObjectMapper.fromRs.RsToMany
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.BaseClassInfo
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsLocalClassMapping
 import com.qualifiedcactus.sqlObjectMapper.fromRs.mapping.RsTotalClassMapping
+import com.qualifiedcactus.sqlObjectMapper.fromRs.resultSetProcessing.MResultSet
 import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.Test
 
@@ -800,4 +802,76 @@ internal class ParseRsForToManyRelationTest {
             }
         }
     }
+
+    @Test
+    fun parseRsToManyRelationOrdered() {
+        val sql = """
+            select * from entity_1
+            left join entity_2 on entity_1_id = entity_1_fk
+            left join entity_3 on entity_2_id = entity_2_fk
+            order by entity_1_id asc, entity_2_id asc, entity_3_id asc
+        """.trimIndent()
+
+        val expected = listOf(
+            Entity1(1, emptyList()),
+            Entity1(2, listOf(Entity2(1, emptyList()), Entity2(2, emptyList()))),
+            Entity1(3, listOf(Entity2(3, listOf(1, 2)))),
+        )
+        connection.createStatement().use { stmt ->
+            val list = MResultSet(stmt.executeQuery(sql), Entity1::class).toStream().use { it.toList() }
+            assertEquals(expected, list)
+        }
+        connection.createStatement().use { stmt ->
+            val list = MResultSet(stmt.executeQuery(sql), Entity1::class).toStream().use { it.limit(2).toList() }
+            assertEquals(expected.subList(0, 2), list)
+        }
+        connection.createStatement().use { stmt ->
+            val rs = stmt.executeQuery(sql.replace("entity_1_id asc", "entity_1_id desc"))
+            assertEquals(expected[2], MResultSet(rs, Entity1::class).firstOnly())
+        }
+    }
+
+    @Test
+    fun testMissingColumn() {
+        val sql = "select entity_1_id, entity_2_id from entity_1 left join entity_2 on entity_1_id = entity_1_fk"
+        connection.createStatement().use { stmt ->
+            val exception = assertThrowsExactly(MissingColumnException::class.java) {
+                MResultSet(stmt.executeQuery(sql), Entity1::class).toList()
+            }
+            assertTrue(exception.message!!.contains("ENTITY_3_ID"))
+        }
+    }
+
+    data class CompositeRoot(
+        @[RsColumn(isId = true, name = "root_a")]
+        val a: Long,
+        @[RsColumn(isId = true, name = "root_b")]
+        val b: Int,
+        @[RsToMany]
+        val leaves: Set<Leaf>,
+    )
+    data class Leaf(
+        @[RsColumn(isId = true, name = "leaf_id")]
+        val id: String,
+    )
+
+    @Test
+    fun parseRsToManyRelationWithCompositeIds() {
+        val sql = """
+            with recursive nums(n) as (
+                select 1 from (values(0)) union all select n + 1 from nums where n < 100
+            )
+            select n as root_a, mod(n, 7) as root_b, cast(n * 2 + k as varchar(10)) as leaf_id
+            from nums, (values (0), (1)) as t(k)
+        """.trimIndent()
+
+        connection.createStatement().use { stmt ->
+            val list = MResultSet(stmt.executeQuery(sql), CompositeRoot::class).toList()
+            assertEquals(100, list.size)
+            list.forEach { root ->
+                assertEquals((root.a % 7).toInt(), root.b)
+                assertEquals(setOf(Leaf("${root.a * 2}"), Leaf("${root.a * 2 + 1}")), root.leaves)
+            }
+        }
+    }
 }
\ No newline at end of file
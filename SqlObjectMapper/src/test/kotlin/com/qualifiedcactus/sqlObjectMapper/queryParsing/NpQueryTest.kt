@@ -665,6 +665,7 @@
 
 package com.qualifiedcactus.sqlObjectMapper.queryParsing
 
+import com.qualifiedcactus.sqlObjectMapper.SqlObjectMapperException
 import org.junit.jupiter.api.Assertions.*
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.TestInstance
@@ -704,28 +705,123 @@ internal class NpQueryTest {
             assertInstanceOf(NpParameter.ExpandedParameter::class.java, this)
             this as NpParameter.ExpandedParameter
             assertEquals(5, length)
-            assertEquals(3, positionRangeList.size)
-            positionRangeList[0].let { (start,end)->
-                assertEquals(1, start)
-                assertEquals(5, end)
-            }
-            positionRangeList[1].let { (start,end)->
-                assertEquals(8, start)
-                assertEquals(12, end)
-            }
-            positionRangeList[2].let { (start,end)->
-                assertEquals(14, start)
-                assertEquals(18, end)
-            }
+            assertArrayEquals(intArrayOf(1, 8, 14), startPositions)
         }
 
         assertNotNull(query.parametersMap["PARAM_2"])
         query.parametersMap["PARAM_2"]!!.apply {
             assertInstanceOf(NpParameter.SimpleParameter::class.java, this)
             this as NpParameter.SimpleParameter
-            assertEquals(2, positionList.size)
-            assertEquals(7, positionList[0])
-            assertEquals(13, positionList[1])
+            assertArrayEquals(intArrayOf(7, 13), positions)
         }
     }
+
+    @Test
+    fun testSkipLiteralsAndComments() {
+        val sql = """
+            select ':not_1', "col:not_2", `col:not_3`, 'it''s :not_4 ?', x::text -- :not_5 ?
+            from table_1 /* :not_6 ? */
+            where column_1 = :param_1 and column_2 in :param_2[2] and column_3 = ?
+        """.trimIndent()
+        val expectedTranslatedSql = """
+            select ':not_1', "col:not_2", `col:not_3`, 'it''s :not_4 ?', x::text -- :not_5 ?
+            from table_1 /* :not_6 ? */
+            where column_1 = ? and column_2 in (?,?) and column_3 = ?
+        """.trimIndent()
+
+        val query = NpQuery.parseNpSql(sql)
+        assertEquals(expectedTranslatedSql, query.translatedQuery)
+        assertEquals(setOf("PARAM_1", "PARAM_2"), query.parametersMap.keys)
+        assertArrayEquals(intArrayOf(1), (query.parametersMap["PARAM_1"] as NpParameter.SimpleParameter).positions)
+        assertArrayEquals(intArrayOf(2), (query.parametersMap["PARAM_2"] as NpParameter.ExpandedParameter).startPositions)
+    }
+
+    @Test
+    fun testSkipDollarQuotedStrings() {
+        val sql = "select \$\$ :not_1 ' ? \$\$, \$body\$ :not_2 \$\$ \$body\$, v\$session.x, \$1 from table_1 where column_1 = :param_1"
+        val query = NpQuery.parseNpSql(sql)
+        assertEquals(
+            "select \$\$ :not_1 ' ? \$\$, \$body\$ :not_2 \$\$ \$body\$, v\$session.x, \$1 from table_1 where column_1 = ?",
+            query.translatedQuery
+        )
+        assertEquals(setOf("PARAM_1"), query.parametersMap.keys)
+        assertArrayEquals(intArrayOf(1), (query.parametersMap["PARAM_1"] as NpParameter.SimpleParameter).positions)
+    }
+
+    @Test
+    fun testDynamicParameter() {
+        val query = NpQuery.parseNpSql("select * from table_1 where column_1 in :ids[*] and column_2 = :param_1")
+        assertTrue(query.hasDynamicParameters)
+        assertSame(NpParameter.DynamicParameter, query.parametersMap["IDS"])
+
+        val expanded = query.withDynamicLengths(mapOf("IDS" to 3))
+        assertEquals("select * from table_1 where column_1 in (?,?,?,?) and column_2 = ?", expanded.translatedQuery)
+        (expanded.parametersMap["IDS"] as NpParameter.ExpandedParameter).apply {
+            assertEquals(4, length)
+            assertTrue(padWithLastValue)
+        }
+        assertArrayEquals(intArrayOf(5), (expanded.parametersMap["PARAM_1"] as NpParameter.SimpleParameter).positions)
+        assertSame(expanded, query.withDynamicLengths(mapOf("IDS" to 4)))
+        assertEquals(listOf(1, 1, 2, 4, 8, 8, 16), listOf(0, 1, 2, 3, 5, 8, 9).map { NpQuery.bucketOf(it) })
+    }
+
+    @Test
+    fun testArrayParameter() {
+        val query = NpQuery.parseNpSql("select * from table_1 where column_1 = any(:ids[array:bigint]) or column_2 = any(:ids)")
+        assertEquals("select * from table_1 where column_1 = any(?) or column_2 = any(?)", query.translatedQuery)
+        (query.parametersMap["IDS"] as NpParameter.ArrayParameter).apply {
+            assertEquals("bigint", elementTypeName)
+            assertArrayEquals(intArrayOf(1, 2), positions)
+        }
+        assertThrows(SqlObjectMapperException::class.java) {
+            NpQuery.parseNpSql("select * from table_1 where column_1 = any(:ids[array:bigint]) or column_2 = any(:ids[array:int])")
+        }
+        assertThrows(SqlObjectMapperException::class.java) {
+            NpQuery.parseNpSql("select * from table_1 where column_1 in :ids[3] or column_2 = any(:ids[array:bigint])")
+        }
+    }
+
+    @Test
+    fun testTupleParameter() {
+        val query = NpQuery.parseNpSql(
+            "select * from table_1 where (column_1, column_2) in :keys[2](column_1, column_2) and column_3 = :param_1"
+        )
+        assertEquals(
+            "select * from table_1 where (column_1, column_2) in ((?,?),(?,?)) and column_3 = ?",
+            query.translatedQuery
+        )
+        (query.parametersMap["KEYS"] as NpParameter.ExpandedParameter).apply {
+            assertEquals(2, length)
+            assertEquals(2, tupleSize)
+            assertEquals(listOf("COLUMN_1", "COLUMN_2"), componentNames)
+        }
+        assertArrayEquals(intArrayOf(5), (query.parametersMap["PARAM_1"] as NpParameter.SimpleParameter).positions)
+    }
+
+    @Test
+    fun testParenthesesAfterExpandedParameter() {
+        // parentheses which are neither a tuple size nor component names are sql
+        val query = NpQuery.parseNpSql(
+            "select * from table_1 where column_1 in :ids[2](select 1) or column_2 = any(:others[2](column_2 + 1))"
+        )
+        assertEquals(
+            "select * from table_1 where column_1 in (?,?)(select 1) or column_2 = any((?,?)(column_2 + 1))",
+            query.translatedQuery
+        )
+        assertEquals(1, (query.parametersMap["IDS"] as NpParameter.ExpandedParameter).tupleSize)
+
+        val spaced = NpQuery.parseNpSql("select * from table_1 where column_1 in :ids[2] (and) :p[1](")
+        assertEquals("select * from table_1 where column_1 in (?,?) (and) (?)(", spaced.translatedQuery)
+    }
+
+    @Test
+    fun testCache() {
+        val sql = "select * from table_1 where column_1 = :param_1 -- ${java.util.UUID.randomUUID()}"
+        val before = NpQuery.cacheStatistics()
+        val query = NpQuery.parseNpSql(sql)
+        assertSame(query, NpQuery.parseNpSql(sql))
+        val after = NpQuery.cacheStatistics()
+        assertTrue(after.misses >= before.misses + 1)
+        assertTrue(after.hits >= before.hits + 1)
+    }
 }
\ No newline at end of file
@@ -718,4 +718,14 @@ internal class DefaultParamClassMappingTest {
         assertEquals(3, param2Info.getter(dtoValue))
 
     }
+
+    @Test
+    fun testJavaClass() {
+        val dtoValue = JavaParamDto(1, 2)
+
+        val paramMapping = MappingProvider.mapParamClass(JavaParamDto::class)
+        assertEquals(setOf("PARAM_1", "PARAM_5"), paramMapping.parametersNameMap.keys)
+        assertEquals(1, paramMapping.parametersNameMap["PARAM_1"]!!.getter(dtoValue))
+        assertEquals(2L, paramMapping.parametersNameMap["PARAM_5"]!!.getter(dtoValue))
+    }
 }
\ No newline at end of file